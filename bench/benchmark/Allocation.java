@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Random;
+
+import model.LP;
+import model.Rationals;
+import model.Simplex;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.apache.commons.math3.linear.Array2DRowFieldMatrix;
+import org.apache.commons.math3.linear.ArrayFieldVector;
+import org.apache.commons.math3.linear.FieldMatrix;
+import org.apache.commons.math3.linear.FieldVector;
+
+/**
+ * Measure the allocation rate of the dictionary update done in a pivot,
+ * once with plain {@code BigFraction} arithmetic as {@code LP.pivot} used to
+ * do it and once with the interning helpers in {@code Rationals}. Run with
+ * {@code ant bench}.
+ * <p>
+ * Allocated bytes are read from the HotSpot specific
+ * {@code com.sun.management.ThreadMXBean}.
+ * </p>
+ *
+ * @author  Andreas Halle
+ */
+public class Allocation {
+    private static final int WARMUP = 200;
+    private static final int RUNS = 2000;
+
+    private static final com.sun.management.ThreadMXBean mx =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+
+
+
+    public static void main(String[] args) {
+        int m = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int n = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+
+        FieldMatrix<BigFraction> bin = sparse(m, n, 0.2, new Random(1));
+        FieldVector<BigFraction> b_ = new ArrayFieldVector<BigFraction>(
+                m, BigFraction.ONE);
+        FieldVector<BigFraction> c_ = new ArrayFieldVector<BigFraction>(
+                n, BigFraction.ONE);
+
+        System.out.printf("Pivot update on a %d x %d dictionary:%n", m, n);
+        report("plain",    measure(new Plain(bin, b_, c_)));
+        report("interned", measure(new Interned(bin, b_, c_)));
+
+        LP lp = program(m, n, new Random(2));
+        Simplex simplex = new Simplex();
+        long before = mx.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long start = System.nanoTime();
+        try {
+            simplex.solve(lp);
+        } catch (RuntimeException e) {
+            System.out.printf("Solve: %s%n", e.getLocalizedMessage());
+        }
+        long bytes = mx.getThreadAllocatedBytes(Thread.currentThread().getId())
+                   - before;
+        long ns = System.nanoTime() - start;
+        int pivots = Math.max(1, simplex.getExactPivots());
+        System.out.printf("Exact solve of a random %d x %d program: %d pivots,"
+                        + " %.1f KB and %.3f ms per pivot.%n", m, n, pivots,
+                          bytes / 1024.0 / pivots, ns / 1e6 / pivots);
+    }
+
+
+
+    private static abstract class Kernel {
+        final FieldMatrix<BigFraction> bin;
+        final FieldVector<BigFraction> b_;
+        final FieldVector<BigFraction> c_;
+
+        Kernel(FieldMatrix<BigFraction> bin, FieldVector<BigFraction> b_,
+               FieldVector<BigFraction> c_) {
+            this.bin = bin;
+            this.b_ = b_;
+            this.c_ = c_;
+        }
+
+        abstract Object run(int e, int l);
+    }
+
+
+
+    /* The update as done with plain BigFraction and FieldVector arithmetic. */
+    private static class Plain extends Kernel {
+        Plain(FieldMatrix<BigFraction> bin, FieldVector<BigFraction> b_,
+              FieldVector<BigFraction> c_) {
+            super(bin, b_, c_);
+        }
+
+        Object run(int e, int l) {
+            FieldVector<BigFraction> ej = new ArrayFieldVector<BigFraction>(
+                    bin.getColumnDimension(), BigFraction.ZERO);
+            ej.setEntry(e, BigFraction.ONE);
+            FieldVector<BigFraction> psd = bin.operate(ej);
+            BigFraction t = b_.getEntry(l).divide(psd.getEntry(l));
+
+            FieldVector<BigFraction> ei = new ArrayFieldVector<BigFraction>(
+                    bin.getRowDimension(), BigFraction.ZERO);
+            ei.setEntry(l, BigFraction.ONE);
+            FieldVector<BigFraction> dsd = bin.transpose()
+                    .scalarMultiply(BigFraction.MINUS_ONE).operate(ei);
+            BigFraction s = c_.getEntry(e).divide(dsd.getEntry(e));
+
+            FieldVector<BigFraction> nb_ = b_.subtract(psd.mapMultiply(t));
+            FieldVector<BigFraction> nc_ = c_.subtract(dsd.mapMultiply(s));
+            return new Object[] {nb_, nc_};
+        }
+    }
+
+
+
+    /* The same update using the helpers in Rationals. */
+    private static class Interned extends Kernel {
+        Interned(FieldMatrix<BigFraction> bin, FieldVector<BigFraction> b_,
+                 FieldVector<BigFraction> c_) {
+            super(bin, b_, c_);
+        }
+
+        Object run(int e, int l) {
+            FieldVector<BigFraction> psd = bin.getColumnVector(e);
+            BigFraction t = Rationals.divide(b_.getEntry(l), psd.getEntry(l));
+
+            FieldVector<BigFraction> dsd = Rationals.negate(
+                    bin.getRowVector(l));
+            BigFraction s = Rationals.divide(c_.getEntry(e), dsd.getEntry(e));
+
+            FieldVector<BigFraction> nb_ = Rationals.zero(b_.getDimension());
+            for (int i = 0; i < nb_.getDimension(); i++) {
+                nb_.setEntry(i, Rationals.subtractProduct(b_.getEntry(i),
+                                                          psd.getEntry(i), t));
+            }
+            FieldVector<BigFraction> nc_ = Rationals.zero(c_.getDimension());
+            for (int j = 0; j < nc_.getDimension(); j++) {
+                nc_.setEntry(j, Rationals.subtractProduct(c_.getEntry(j),
+                                                          dsd.getEntry(j), s));
+            }
+            return new Object[] {nb_, nc_};
+        }
+    }
+
+
+
+    /* Return {bytes per run, nanoseconds per run}. */
+    private static double[] measure(Kernel k) {
+        int m = k.bin.getRowDimension();
+        int n = k.bin.getColumnDimension();
+        int sink = 0;
+
+        for (int r = 0; r < WARMUP; r++) {
+            sink += k.run(r % n, pivotRow(k.bin, r % n)).hashCode();
+        }
+
+        long tid = Thread.currentThread().getId();
+        long before = mx.getThreadAllocatedBytes(tid);
+        long start = System.nanoTime();
+        for (int r = 0; r < RUNS; r++) {
+            sink += k.run(r % n, pivotRow(k.bin, r % n)).hashCode();
+        }
+        long ns = System.nanoTime() - start;
+        long bytes = mx.getThreadAllocatedBytes(tid) - before;
+
+        if (sink == m) System.out.print("");
+        return new double[] {(double) bytes / RUNS, (double) ns / RUNS};
+    }
+
+
+
+    private static void report(String name, double[] r) {
+        System.out.printf("  %-9s %10.1f KB/op %10.3f ms/op %10.1f MB/s%n", name,
+                          r[0] / 1024, r[1] / 1e6, r[0] / r[1] * 1e3);
+    }
+
+
+
+    /* First row with a non-zero entry in column e. */
+    private static int pivotRow(FieldMatrix<BigFraction> A, int e) {
+        for (int i = 0; i < A.getRowDimension(); i++) {
+            if (!Rationals.isZero(A.getEntry(i, e))) return i;
+        }
+        return 0;
+    }
+
+
+
+    /*
+     * A random matrix where a fraction of the entries are small non-zero
+     * integers and the rest are zero, like the constraint matrices of most
+     * programs in input/.
+     */
+    private static FieldMatrix<BigFraction> sparse(int m, int n, double density,
+                                                   Random rnd) {
+        BigFraction[][] data = new BigFraction[m][n];
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                int v = rnd.nextDouble() < density ? 1 + rnd.nextInt(9) : 0;
+                data[i][j] = new BigFraction(rnd.nextBoolean() ? v : -v);
+            }
+            data[i][i % n] = new BigFraction(1 + rnd.nextInt(9));
+        }
+        return new Array2DRowFieldMatrix<BigFraction>(data, false);
+    }
+
+
+
+    /* A random feasible program: max c x subject to A x <= b, x >= 0. */
+    private static LP program(int m, int n, Random rnd) {
+        FieldMatrix<BigFraction> N = sparse(m, n, 0.2, rnd);
+        BigFraction[] b = new BigFraction[m];
+        BigFraction[] c = new BigFraction[n];
+        for (int i = 0; i < m; i++) b[i] = new BigFraction(1 + rnd.nextInt(20));
+        for (int j = 0; j < n; j++) c[j] = new BigFraction(1 + rnd.nextInt(9));
+
+        HashMap<Integer, String> x = new HashMap<Integer, String>();
+        for (int j = 0; j < n; j++) x.put(j, "x" + (j+1));
+        return new LP(N, new ArrayFieldVector<BigFraction>(b),
+                      new ArrayFieldVector<BigFraction>(c), x);
+    }
+}
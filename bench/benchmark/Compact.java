@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package benchmark;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import model.LP;
+import model.Rationals;
+import model.Simplex;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.apache.commons.math3.linear.Array2DRowFieldMatrix;
+import org.apache.commons.math3.linear.ArrayFieldVector;
+import org.apache.commons.math3.linear.FieldMatrix;
+
+/**
+ * Measure the heap used by the dictionary B_^-1 N_ of an optimal basis,
+ * once as the {@code CompactMatrix} that the {@code DICTIONARY} engine
+ * keeps and once as a matrix of {@code BigFraction}s. Run with
+ * {@code ant bench}.
+ * <p>
+ * Sizes are differences in used heap after full collections, so they are
+ * estimates. The {@code BigFraction}s are interned, so both share the
+ * cached small integers of {@code Rationals}.
+ * </p>
+ *
+ * @author  Andreas Halle
+ */
+public class Compact {
+    public static void main(String[] args) {
+        int m = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int n = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+
+        Simplex simplex = new Simplex();
+        LP lp = simplex.solve(program(m, n, new Random(3)));
+
+        /*
+         * The entries as interned BigFractions, then the same entries kept
+         * by the DICTIONARY engine once it has computed them.
+         */
+        long m0 = used();
+        BigFraction[][] plain = entries(lp.dictionary());
+        long m1 = used();
+        LP kept = lp.engine(LP.Engine.DICTIONARY);
+        kept.dictionary();
+        long m2 = used();
+
+        System.out.printf("B_^-1 N_ of a random %d x %d program after %d"
+                        + " exact pivots:%n", m, n, simplex.getExactPivots());
+        System.out.printf("  BigFraction %10.1f KB%n", (m1 - m0) / 1024.0);
+        System.out.printf("  compact     %10.1f KB (%.0f%%)%n",
+                          (m2 - m1) / 1024.0,
+                          100.0 * (m2 - m1) / (m1 - m0));
+        if (plain.length == 0 && kept.objVal() == null) System.out.print("");
+    }
+
+
+
+    /* The entries of B_^-1 N_ in the given dictionary, interned. */
+    private static BigFraction[][] entries(FieldMatrix<BigFraction> dict) {
+        int m = dict.getRowDimension() - 1;
+        int n = dict.getColumnDimension() - 1;
+        BigFraction[][] A = new BigFraction[m][n];
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                A[i][j] = Rationals.negate(dict.getEntry(i+1, j+1));
+            }
+        }
+        return A;
+    }
+
+
+
+    /* Used heap in bytes after full collections. */
+    private static long used() {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, rt.totalMemory() - rt.freeMemory());
+        }
+        return used;
+    }
+
+
+
+    /*
+     * A random dense program: max c x subject to A x <= b, x >= 0, with
+     * small positive integers, whose optimal dictionary has fractions.
+     */
+    private static LP program(int m, int n, Random rnd) {
+        BigFraction[][] data = new BigFraction[m][n];
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                data[i][j] = new BigFraction(1 + rnd.nextInt(9));
+            }
+        }
+        BigFraction[] b = new BigFraction[m];
+        BigFraction[] c = new BigFraction[n];
+        for (int i = 0; i < m; i++) b[i] = new BigFraction(1 + rnd.nextInt(20));
+        for (int j = 0; j < n; j++) c[j] = new BigFraction(1 + rnd.nextInt(9));
+
+        HashMap<Integer, String> x = new HashMap<Integer, String>();
+        for (int j = 0; j < n; j++) x.put(j, "x" + (j+1));
+        return new LP(new Array2DRowFieldMatrix<BigFraction>(data, false),
+                      new ArrayFieldVector<BigFraction>(b),
+                      new ArrayFieldVector<BigFraction>(c), x);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package benchmark;
+
+import java.io.File;
+import java.util.Arrays;
+
+import model.LP;
+
+import org.antlr.runtime.ANTLRFileStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.apache.commons.math3.fraction.BigFraction;
+import org.apache.commons.math3.linear.FieldMatrix;
+
+import parser.LpFileFormatLexer;
+import parser.LpFileFormatParser;
+
+/**
+ * Pivot the sample programs with the REVISED and the DICTIONARY engine side
+ * by side and check that every dictionary agrees. From each dictionary on
+ * the path to an optimum, every explicit pivot (entering, leaving) is
+ * tried with both engines, the DICTIONARY engine pivoting both with and
+ * without the dictionary it keeps. Run with {@code ant bench}.
+ *
+ * @author  Andreas Halle
+ */
+public class Engines {
+    private static final int ITERATIONS = 30;
+
+
+
+    public static void main(String[] args) throws Exception {
+        File[] files = new File(args.length > 0 ? args[0] : "input")
+                .listFiles();
+        Arrays.sort(files);
+
+        int programs = 0, pivots = 0;
+        for (File file : files) {
+            if (!file.getName().endsWith(".lps")) continue;
+            LpFileFormatParser parser = new LpFileFormatParser(
+                    new CommonTokenStream(new LpFileFormatLexer(
+                            new ANTLRFileStream(file.getPath()))));
+            LP lp = parser.lpfromfile();
+            pivots += walk(file.getName(),
+                           lp.engine(LP.Engine.REVISED),
+                           lp.engine(LP.Engine.DICTIONARY));
+            programs++;
+        }
+        System.out.printf("The engines agree on %d explicit pivots from the"
+                        + " dictionaries of %d sample programs.%n",
+                          pivots, programs);
+    }
+
+
+
+    /*
+     * Walk revised and dict, the same program with each engine, towards an
+     * optimum, trying every explicit pivot on the way. Return the number of
+     * pivots tried.
+     */
+    private static int walk(String name, LP revised, LP dict) {
+        boolean dual = !revised.feasible(false) && revised.feasible(true);
+        if (!revised.feasible(false) && !revised.feasible(true)) {
+            revised = revised.phaseOneObj();
+            dict = dict.phaseOneObj();
+            dual = true;
+        }
+        compare(name, revised, dict);
+
+        int pivots = 0;
+        for (int it = 0; it < ITERATIONS; it++) {
+            for (int j = 0; j < revised.getNoNonBasic(); j++) {
+                for (int i = 0; i < revised.getNoBasic(); i++) {
+                    LP r = pivot(revised, j, i);
+                    compare(name, r, pivot(fresh(dict), j, i));
+                    compare(name, r, pivot(dict, j, i));
+                    pivots++;
+                }
+            }
+            if (revised.optimal(dual)) break;
+            LP r = step(revised, dual);
+            LP d = step(dict, dual);
+            if (r == null || d == null) {
+                if (r != d) fail(name, "step");
+                break;
+            }
+            revised = r;
+            dict = d;
+            compare(name, revised, dict);
+        }
+        return pivots;
+    }
+
+
+
+    /* The explicit pivot (entering, leaving), or null if it is illegal. */
+    private static LP pivot(LP lp, int entering, int leaving) {
+        try {
+            return lp.pivot(entering, leaving);
+        } catch (ArithmeticException e) {
+            return null;
+        }
+    }
+
+
+
+    /*
+     * Return lp without the dictionary its engine keeps, as a program is
+     * when it is first read or given a basis.
+     */
+    private static LP fresh(LP lp) {
+        return lp.engine(LP.Engine.REVISED).engine(lp.getEngine());
+    }
+
+
+
+    /* The next pivot of the simplex method, or null if there is none. */
+    private static LP step(LP lp, boolean dual) {
+        try {
+            return lp.pivot(dual);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+
+
+    private static void compare(String name, LP revised, LP dict) {
+        if (revised == null || dict == null) {
+            if (revised != dict) fail(name, "legality of a pivot");
+            return;
+        }
+        int[] basis = dict.getBasicIndices();
+        if (!Arrays.equals(revised.getBasicIndices(), basis)) {
+            fail(name, "basis");
+        }
+        if (!revised.objVal().equals(dict.objVal())) fail(name, "objective");
+
+        FieldMatrix<BigFraction> r = revised.dictionary();
+        FieldMatrix<BigFraction> d = dict.dictionary();
+        for (int i = 0; i < r.getRowDimension(); i++) {
+            for (int j = 0; j < r.getColumnDimension(); j++) {
+                if (!r.getEntry(i, j).equals(d.getEntry(i, j))) {
+                    fail(name, "dictionary");
+                }
+            }
+        }
+    }
+
+
+
+    private static void fail(String name, String what) {
+        String e = String.format("%s: the engines differ (%s).", name, what);
+        throw new RuntimeException(e);
+    }
+}
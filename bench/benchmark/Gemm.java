@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package benchmark;
+
+import java.util.Random;
+
+import model.FloatBlas;
+
+/**
+ * Time the blocked kernels of {@code FloatBlas} against the naive triple
+ * loops: the product C -= A B and the unit lower triangular solve
+ * L X = B, on n x n matrices. The kernels run on the pool of
+ * {@code Parallel}, so set {@code pplex.parallelism} to 1 to compare them
+ * on a single thread. Run with {@code ant bench}.
+ *
+ * @author  Andreas Halle
+ */
+public class Gemm {
+    private static final int RUNS = 3;
+
+
+
+    public static void main(String[] args) {
+        final int n = args.length > 0 ? Integer.parseInt(args[0]) : 800;
+
+        Random rnd = new Random(1);
+        final double[] a = new double[n * n];
+        final double[] b = new double[n * n];
+        for (int k = 0; k < a.length; k++) a[k] = rnd.nextGaussian() / n;
+        for (int k = 0; k < b.length; k++) b[k] = rnd.nextGaussian();
+
+        System.out.printf("Matrices of %d x %d doubles:%n", n, n);
+
+        double[] c1 = b.clone();
+        double[] c2 = b.clone();
+        naiveGemm(n, a, b, c1);
+        FloatBlas.gemm(n, n, n, a, 0, n, b, 0, n, c2, 0, n);
+        check(c1, c2);
+        c1 = b.clone();
+        c2 = b.clone();
+        naiveLower(n, a, c1);
+        FloatBlas.lower(n, n, a, 0, n, c2, 0, n);
+        check(c1, c2);
+
+        double flops = 2.0 * n * n * n;
+        report("gemm", flops, new Loop() {
+            double[] c = b.clone();
+            void run() { naiveGemm(n, a, b, c); }
+        }, new Loop() {
+            double[] c = b.clone();
+            void run() { FloatBlas.gemm(n, n, n, a, 0, n, b, 0, n, c, 0, n); }
+        });
+        report("lower solve", flops / 2, new Loop() {
+            void run() { naiveLower(n, a, b.clone()); }
+        }, new Loop() {
+            void run() { FloatBlas.lower(n, n, a, 0, n, b.clone(), 0, n); }
+        });
+    }
+
+
+
+    private static abstract class Loop {
+        abstract void run();
+    }
+
+
+
+    /* Return nanoseconds per run, after one run of warm-up. */
+    private static double time(Loop loop) {
+        loop.run();
+        long start = System.nanoTime();
+        for (int r = 0; r < RUNS; r++) loop.run();
+        return (double) (System.nanoTime() - start) / RUNS;
+    }
+
+
+
+    /* C -= A B, by inner products. */
+    private static void naiveGemm(int n, double[] a, double[] b, double[] c) {
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                double sum = 0;
+                for (int k = 0; k < n; k++) sum += a[i*n + k] * b[k*n + j];
+                c[i*n + j] -= sum;
+            }
+        }
+    }
+
+
+
+    /* Solve L X = B in place of B by forward substitution, column by column. */
+    private static void naiveLower(int n, double[] l, double[] b) {
+        for (int j = 0; j < n; j++) {
+            for (int i = 0; i < n; i++) {
+                double sum = b[i*n + j];
+                for (int k = 0; k < i; k++) sum -= l[i*n + k] * b[k*n + j];
+                b[i*n + j] = sum;
+            }
+        }
+    }
+
+
+
+    private static void check(double[] a, double[] b) {
+        for (int k = 0; k < a.length; k++) {
+            if (Math.abs(a[k] - b[k]) > 1e-9 * (1 + Math.abs(a[k]))) {
+                String e = String.format("Kernel returned %g, expected %g.",
+                                         b[k], a[k]);
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+
+
+    private static void report(String name, double flops, Loop naive,
+                               Loop kernel) {
+        double t = time(naive), k = time(kernel);
+        System.out.printf("  %-12s naive %9.1f ms (%5.2f GFLOP/s)  "
+                          + "kernel %9.1f ms (%5.2f GFLOP/s)  (%.2fx)%n",
+                          name, t / 1e6, flops / t, k / 1e6, flops / k, t / k);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package benchmark;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import model.FloatLP;
+import model.LP;
+import model.Simplex;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.apache.commons.math3.linear.Array2DRowFieldMatrix;
+import org.apache.commons.math3.linear.ArrayFieldVector;
+
+/**
+ * Solve random degenerate programs with {@link Simplex#solveFast(LP)}, once
+ * with the textbook ratio test and once with Harris' ratio test, and count
+ * the pivots in double precision, the tiny pivot elements rejected and the
+ * exact pivots needed to repair the final basis. Run with {@code ant bench}.
+ *
+ * @author  Andreas Halle
+ */
+public class Harris {
+    private static final int PROGRAMS = 20;
+
+
+
+    public static void main(String[] args) {
+        int m = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int n = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+
+        LP[] lps = new LP[PROGRAMS];
+        Random rnd = new Random(1);
+        for (int k = 0; k < PROGRAMS; k++) lps[k] = program(m, n, rnd);
+
+        System.out.printf("%d degenerate %d x %d programs:%n", PROGRAMS, m, n);
+        /* The first round warms up the JIT and is not reported. */
+        for (int round = 0; round < 2; round++) {
+            for (FloatLP.RatioTest rule : FloatLP.RatioTest.values()) {
+                run(rule, lps, round == 1);
+            }
+        }
+    }
+
+
+
+    private static void run(FloatLP.RatioTest rule, LP[] lps,
+                            boolean report) {
+        Simplex simplex = new Simplex();
+        simplex.setRatioTest(rule);
+
+        int pivots = 0, rejected = 0, exact = 0;
+        long start = System.nanoTime();
+        for (LP lp : lps) {
+            simplex.solveFast(lp);
+            pivots += simplex.getFloatPivots();
+            rejected += simplex.getRejectedPivots();
+            exact += simplex.getExactPivots();
+        }
+        long ns = System.nanoTime() - start;
+        if (!report) return;
+        System.out.printf("  %-8s %6d float %6d rejected %6d exact pivots"
+                        + " %9.1f ms%n", rule.toString().toLowerCase(),
+                          pivots, rejected, exact, ns / 1e6);
+    }
+
+
+
+    /*
+     * A random bounded program, max c x subject to A x <= b, x >= 0, where a
+     * quarter of b is zero so that many pivots are degenerate. The entries
+     * of A are thirds, which are not exact in double precision, and its last
+     * row bounds the sum of x.
+     */
+    private static LP program(int m, int n, Random rnd) {
+        BigFraction[][] A = new BigFraction[m][n];
+        BigFraction[] b = new BigFraction[m];
+        for (int i = 0; i < m - 1; i++) {
+            for (int j = 0; j < n; j++) {
+                int v = rnd.nextDouble() < 0.3 ? rnd.nextInt(19) - 9 : 0;
+                A[i][j] = new BigFraction(v, 3);
+            }
+            b[i] = new BigFraction(i % 4 == 0 ? 0 : 1 + rnd.nextInt(20));
+        }
+        for (int j = 0; j < n; j++) A[m-1][j] = BigFraction.ONE;
+        b[m-1] = new BigFraction(100);
+
+        BigFraction[] c = new BigFraction[n];
+        for (int j = 0; j < n; j++) c[j] = new BigFraction(1 + rnd.nextInt(9));
+
+        HashMap<Integer, String> x = new HashMap<Integer, String>();
+        for (int j = 0; j < n; j++) x.put(j, "x" + (j+1));
+        return new LP(new Array2DRowFieldMatrix<BigFraction>(A, false),
+                      new ArrayFieldVector<BigFraction>(b),
+                      new ArrayFieldVector<BigFraction>(c), x);
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package benchmark;
+
+import java.util.Random;
+
+import model.FloatKernels;
+import model.VectorKernels;
+
+/**
+ * Time the loops of {@code FloatKernels} on a large double precision
+ * dictionary against the alternatives: the two-pass ratio test that
+ * {@code FloatLP} used before, a hand-unrolled row update, and the kernels
+ * of {@code VectorKernels} on the rows. Run with {@code ant bench}, which
+ * turns the vector kernels off in {@code FloatKernels}, so that it times
+ * the scalar loops.
+ *
+ * @author  Andreas Halle
+ */
+public class Pricing {
+    private static final int RUNS = 50;
+    private static final int SCANS = 20000;
+    private static final double EPS = 1e-9;
+
+
+
+    public static void main(String[] args) {
+        int m = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int n = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        final int w = n + 1;
+
+        Random rnd = new Random(1);
+        final double[] t = new double[(m+1) * w];
+        for (int k = 0; k < t.length; k++) t[k] = rnd.nextGaussian();
+
+        System.out.printf("Dictionary of %d x %d doubles:%n", m, n);
+
+        final int mm = m;
+        final int nn = n;
+        final int e = n / 2;
+        final int l = m / 2;
+        check(twoPass(t, e, w, 1, n, w, m),
+              FloatKernels.ratio(t, e, w, 1, n, w, m, EPS));
+        check(twoPass(t, l*w, 1, -1, m*w, 1, n),
+              FloatKernels.ratio(t, l*w, 1, -1, m*w, 1, n, EPS));
+
+        report("leaving, column", "before", "kernel", new Loop() {
+            int run() { return twoPass(t, e, w, 1, nn, w, mm); }
+        }, new Loop() {
+            int run() { return FloatKernels.ratio(t, e, w, 1, nn, w, mm, EPS); }
+        }, SCANS);
+        report("leaving, row", "before", "kernel", new Loop() {
+            int run() { return twoPass(t, l*w, 1, -1, mm*w, 1, nn); }
+        }, new Loop() {
+            int run() {
+                return FloatKernels.ratio(t, l*w, 1, -1, mm*w, 1, nn, EPS);
+            }
+        }, SCANS);
+        report("unrolled update", "before", "kernel", new Loop() {
+            int r = 0;
+            int run() { update(t, r = (r + 7) % mm, mm, w, true); return r; }
+        }, new Loop() {
+            int r = 0;
+            int run() { update(t, r = (r + 7) % mm, mm, w, false); return r; }
+        }, RUNS);
+
+        if (FloatKernels.isVectorized()) {
+            System.out.println("  (run with -Dpplex.vector=false to time the"
+                               + " scalar loops)");
+        }
+        try {
+            vector(t, mm, nn, w);
+        } catch (LinkageError x) {
+            System.out.println("  The vector API is not present. Run with"
+                               + " --add-modules jdk.incubator.vector.");
+        }
+    }
+
+
+
+    /* Time the scalar loops against the vector kernels on rows. */
+    private static void vector(final double[] t, final int m, final int n,
+                               final int w) {
+        final VectorKernels v = new VectorKernels();
+        final int ro = m / 2 * w;
+        check(FloatKernels.ratio(t, ro, 1, -1, m*w, 1, n, EPS),
+              v.ratio(t, ro, -1, m*w, n, EPS));
+        check(FloatKernels.harris(t, ro, 1, -1, m*w, 1, n, 1e-7, EPS),
+              v.harris(t, ro, -1, m*w, n, 1e-7, EPS));
+        check(FloatKernels.argmin(t, m*w, 1, n, -EPS),
+              v.argmin(t, m*w, n, -EPS));
+
+        report("pricing, row", "scalar", "vector", new Loop() {
+            int run() { return FloatKernels.argmin(t, m*w, 1, n, -EPS); }
+        }, new Loop() {
+            int run() { return v.argmin(t, m*w, n, -EPS); }
+        }, SCANS);
+        report("ratio, row", "scalar", "vector", new Loop() {
+            int run() {
+                return FloatKernels.ratio(t, ro, 1, -1, m*w, 1, n, EPS);
+            }
+        }, new Loop() {
+            int run() { return v.ratio(t, ro, -1, m*w, n, EPS); }
+        }, SCANS);
+        report("harris, row", "scalar", "vector", new Loop() {
+            int run() {
+                return FloatKernels.harris(t, ro, 1, -1, m*w, 1, n, 1e-7, EPS);
+            }
+        }, new Loop() {
+            int run() { return v.harris(t, ro, -1, m*w, n, 1e-7, EPS); }
+        }, SCANS);
+        report("row update", "scalar", "vector", new Loop() {
+            int r = 0;
+            int run() { update(t, r = (r + 7) % m, m, w, false); return r; }
+        }, new Loop() {
+            int r = 0;
+            int run() {
+                r = (r + 7) % m;
+                int po = r * w;
+                for (int i = 0; i <= m; i++) {
+                    double f = t[i*w] * 1e-3;
+                    if (i != r && f != 0) v.axpy(f, t, po, t, i*w, w);
+                }
+                return r;
+            }
+        }, RUNS);
+    }
+
+
+
+    private static abstract class Loop {
+        abstract int run();
+    }
+
+
+
+    /* Return nanoseconds per run, after as many runs of warm-up. */
+    private static double time(Loop loop, int runs) {
+        int sink = 0;
+        for (int r = 0; r < runs; r++) sink += loop.run();
+        long start = System.nanoTime();
+        for (int r = 0; r < runs; r++) sink += loop.run();
+        long ns = System.nanoTime() - start;
+        if (sink == 42) System.out.print("");
+        return (double) ns / runs;
+    }
+
+
+
+    /* The ratio test as FloatLP did it, in two passes. */
+    private static int twoPass(double[] t, int so, int ss, double sign, int co,
+                               int cs, int len) {
+        boolean unbounded = true;
+        int index = -1;
+
+        for (int i = 0; i < len; i++) {
+            if (Math.abs(t[co + i*cs]) > EPS && index == -1) index = i;
+            if (sign * t[so + i*ss] > EPS) unbounded = false;
+        }
+        if (unbounded) return FloatKernels.UNBOUNDED;
+
+        double max = 0;
+        if (index != -1) max = sign * t[so + index*ss] / t[co + index*cs];
+
+        for (int i = 0; i < len; i++) {
+            double num = sign * t[so + i*ss];
+            double check = t[co + i*cs];
+
+            if (Math.abs(check) > EPS) {
+                double val = num / check;
+                if (val > max) {
+                    max = val;
+                    index = i;
+                }
+            } else {
+                if (num > EPS) return i;
+            }
+        }
+        return index;
+    }
+
+
+
+    /* Eliminate column 0 from every row but r, as a pivot does. */
+    private static void update(double[] t, int r, int m, int w,
+                               boolean unrolled) {
+        int ro = r * w;
+        for (int i = 0; i <= m; i++) {
+            int io = i * w;
+            double f = t[io] * 1e-3;
+            if (i == r || f == 0) continue;
+            if (unrolled) unrolled(f, t, ro, io, w);
+            else FloatKernels.axpy(f, t, ro, t, io, w);
+        }
+    }
+
+
+
+    private static void unrolled(double f, double[] t, int ro, int io, int w) {
+        int j = 0;
+        for (; j + 3 < w; j += 4) {
+            t[io + j]     -= f * t[ro + j];
+            t[io + j + 1] -= f * t[ro + j + 1];
+            t[io + j + 2] -= f * t[ro + j + 2];
+            t[io + j + 3] -= f * t[ro + j + 3];
+        }
+        for (; j < w; j++) t[io + j] -= f * t[ro + j];
+    }
+
+
+
+    private static void check(int a, int b) {
+        if (a != b) {
+            String e = String.format("Kernel returned %d, expected %d.", b, a);
+            throw new RuntimeException(e);
+        }
+    }
+
+
+
+    private static void report(String name, String first, String second,
+                               Loop before, Loop kernel, int runs) {
+        /* Alternate the order, so neither variant gets a warmer cache. */
+        double b = time(before, runs), k = time(kernel, runs);
+        k = Math.min(k, time(kernel, runs));
+        b = Math.min(b, time(before, runs));
+        System.out.printf("  %-16s %s %9.4f ms  %s %9.4f ms  (%.2fx)%n",
+                          name, first, b / 1e6, second, k / 1e6, b / k);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.apache.commons.math3.linear.Array2DRowFieldMatrix;
+import org.apache.commons.math3.linear.FieldDecompositionSolver;
+import org.apache.commons.math3.linear.FieldLUDecomposition;
+import org.apache.commons.math3.linear.FieldMatrix;
+import org.apache.commons.math3.linear.SingularMatrixException;
+
+/**
+ * Check {@code SparseLU} against {@code FieldLUDecomposition} on random
+ * matrices, both freshly factorized and after basis changes by etas, and
+ * time a basis change by an eta against a new factorization. Run with
+ * {@code ant bench}. It is in the package of {@code SparseLU}, which is
+ * not public.
+ *
+ * @author  Andreas Halle
+ */
+public class Factor {
+    private static final int MATRICES = 400;
+    private static final int CHANGES = 3;
+
+
+
+    public static void main(String[] args) {
+        int m = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+
+        int[] count = check(new Random(7));
+        System.out.printf("SparseLU agrees with FieldLUDecomposition on %d"
+                        + " random matrices (%d singular), and after %d"
+                        + " basis changes.%n", MATRICES, count[0], count[1]);
+        time(m, k, new Random(11));
+    }
+
+
+
+    /*
+     * Compare the solves of random matrices and of bases changed from them
+     * with the inverses found by FieldLUDecomposition. Return the number of
+     * singular matrices and the number of basis changes checked.
+     */
+    private static int[] check(Random rnd) {
+        int singular = 0;
+        int changes = 0;
+        for (int t = 0; t < MATRICES; t++) {
+            int m = 1 + rnd.nextInt(16);
+            double density = rnd.nextDouble();
+            BigFraction[][] A = new BigFraction[m][m];
+            for (int i = 0; i < m; i++) {
+                for (int j = 0; j < m; j++) A[i][j] = entry(rnd, density);
+            }
+
+            FieldMatrix<BigFraction> B = new Array2DRowFieldMatrix<BigFraction>(
+                    A);
+            FieldDecompositionSolver<BigFraction> ref =
+                    new FieldLUDecomposition<BigFraction>(B).getSolver();
+            SparseLU lu;
+            try {
+                lu = new SparseLU(CompactMatrix.of(B));
+            } catch (SingularMatrixException e) {
+                if (ref.isNonSingular()) fail("singular", t);
+                singular++;
+                continue;
+            }
+            if (!ref.isNonSingular()) fail("non-singular", t);
+            compare(lu, ref.getInverse(), rnd, t);
+
+            /* Replace random columns, as pivots do. */
+            for (int c = 0; c < CHANGES; c++) {
+                int r = rnd.nextInt(m);
+                BigFraction[] a = new BigFraction[m];
+                for (int i = 0; i < m; i++) a[i] = entry(rnd, density);
+                BigFraction[] d = lu.solve(a);
+                if (Rationals.isZero(d[r])) continue;
+
+                lu = lu.update(r, d);
+                B.setColumn(r, a);
+                ref = new FieldLUDecomposition<BigFraction>(B).getSolver();
+                compare(lu, ref.getInverse(), rnd, t);
+                changes++;
+            }
+        }
+        return new int[] {singular, changes};
+    }
+
+
+
+    /*
+     * Check the rows of the inverse inv found by lu, and solves with lu on
+     * a few right hand sides.
+     */
+    private static void compare(SparseLU lu, FieldMatrix<BigFraction> inv,
+                                Random rnd, int t) {
+        int m = inv.getRowDimension();
+        for (int k = 0; k < m; k++) {
+            BigFraction[] y = lu.solveTransposed(k);
+            for (int i = 0; i < m; i++) {
+                if (!y[i].equals(inv.getEntry(k, i))) fail("row", t);
+            }
+        }
+        for (int q = 0; q < 3; q++) {
+            BigFraction[] b = new BigFraction[m];
+            for (int i = 0; i < m; i++) b[i] = entry(rnd, 0.3);
+            BigFraction[] x = lu.solve(b);
+            BigFraction[] xr = inv.operate(b);
+            for (int i = 0; i < m; i++) {
+                if (!x[i].equals(xr[i])) fail("solve", t);
+            }
+        }
+    }
+
+
+
+    /*
+     * Time changing a column of a sparse basis and solving once with it and
+     * its transpose, by an eta and by a new factorization.
+     */
+    private static void time(int m, int k, Random rnd) {
+        BigFraction[][] A = new BigFraction[m][m];
+        for (int i = 0; i < m; i++) {
+            Arrays.fill(A[i], BigFraction.ZERO);
+            A[i][i] = BigFraction.ONE;
+        }
+        FieldMatrix<BigFraction> B = CompactMatrix.of(A, m);
+        SparseLU lu = new SparseLU(B);
+
+        long eta = 0;
+        long fresh = 0;
+        for (int c = 0; c < k; c++) {
+            int r = rnd.nextInt(m);
+            BigFraction[] a = new BigFraction[m];
+            for (int i = 0; i < m; i++) a[i] = entry(rnd, 4.0 / m);
+            a[r] = new BigFraction(1 + rnd.nextInt(3));
+            BigFraction[] d = lu.solve(a);
+            if (Rationals.isZero(d[r])) continue;
+
+            long t0 = System.nanoTime();
+            SparseLU up = lu.update(r, d);
+            up.solve(a);
+            up.solveTransposed(r);
+            long t1 = System.nanoTime();
+            B.setColumn(r, a);
+            SparseLU lu2 = new SparseLU(B);
+            lu2.solve(a);
+            lu2.solveTransposed(r);
+            long t2 = System.nanoTime();
+
+            eta += t1 - t0;
+            fresh += t2 - t1;
+            lu = up;
+        }
+        System.out.printf("%d basis changes of a sparse %d x %d basis:%n",
+                          k, m, m);
+        System.out.printf("  factorize %9.3f ms  eta %9.3f ms  (%.1fx)%n",
+                          fresh / 1e6 / k, eta / 1e6 / k,
+                          (double) fresh / eta);
+    }
+
+
+
+    private static BigFraction entry(Random rnd, double density) {
+        if (rnd.nextDouble() >= density) return BigFraction.ZERO;
+        return new BigFraction(rnd.nextInt(11) - 5, 1 + rnd.nextInt(3));
+    }
+
+
+
+    private static void fail(String what, int t) {
+        String e = String.format("Matrix %d: SparseLU differs (%s).", t, what);
+        throw new RuntimeException(e);
+    }
+}
@@ -21,7 +21,10 @@ package controller;
 import java.util.ArrayList;
 import java.util.List;
 
+import model.Blocks;
 import model.LP;
+import model.LP.Engine;
+import model.NetworkSimplex;
 import output.Output.Format;
 
 public final class Data {
@@ -37,6 +40,12 @@ public final class Data {
     /* Index pointer for undo/redo operations. */
     private static int redo = 0;
 
+    /*
+     * Maximum number of linear programs kept in the history. The oldest
+     * programs are evicted first. Set by the system property pplex.history.
+     */
+    public static int historyLimit = Integer.getInteger("pplex.history", 1000);
+
     
     public static final String PNAME = "pplex";
     public static final String VERSION = "0.5.2";
@@ -55,16 +64,24 @@ public final class Data {
             LINE, LICENSE, WELCOME);
     
     public static Format format = Format.FRACTION;
+    public static Engine engine = Engine.REVISED;
+
+    /* The independent blocks of the last program read, or null. */
+    public static Blocks blocks;
+
+    /* The network simplex method for the last program read, or null. */
+    public static NetworkSimplex network;
     
     /**
      * Add a {@code LP} to the CLI. The LP is set as the current
-     * linear program.
+     * linear program, using the current engine.
      * 
      * @param lp
      *        a linear program.
      */
     public static void addLp(LP lp) {
-        lps.add(++counter, lp);
+        lps.add(++counter, lp.engine(engine));
+        evict();
         
         // TODO: Is there a better solution to this?
         VisLP.readScope = true;
@@ -73,6 +90,19 @@ public final class Data {
     
     
     
+    /*
+     * Remove the oldest programs from the history until it is within its
+     * limit. The current program is never removed.
+     */
+    private static void evict() {
+        while (lps.size() > historyLimit && counter > 0) {
+            lps.remove(0);
+            counter--;
+        }
+    }
+    
+    
+    
     /**
      * @return
      *         The current linear program. Returns null if no current linear
@@ -20,6 +20,7 @@ package controller;
 
 import lightshell.Shell;
 import controller.shellcommands.Conditions;
+import controller.shellcommands.EngineCmd;
 import controller.shellcommands.Exit;
 import controller.shellcommands.FormatCmd;
 import controller.shellcommands.Phase1;
@@ -28,6 +29,7 @@ import controller.shellcommands.Pivot;
 import controller.shellcommands.Read;
 import controller.shellcommands.Redo;
 import controller.shellcommands.Show;
+import controller.shellcommands.Solve;
 import controller.shellcommands.Undo;
 import controller.shellcommands.Warranty;
 
@@ -46,6 +48,7 @@ class Main {
     public static Shell getShellOnlyCommands() {
     	Shell shell = new Shell();
     	shell.addCommand(new Conditions());
+        shell.addCommand(new EngineCmd());
         shell.addCommand(new Exit());
         shell.addCommand(new FormatCmd());
         shell.addCommand(new Phase1());
@@ -54,6 +57,7 @@ class Main {
         shell.addCommand(new Read());
         shell.addCommand(new Redo());
         shell.addCommand(new Show());
+        shell.addCommand(new Solve());
         shell.addCommand(new Undo());
         shell.addCommand(new Warranty());
         return shell;
@@ -31,7 +31,6 @@ import java.util.HashSet;
 import org.apache.commons.math3.fraction.BigFraction;
 import org.apache.commons.math3.linear.Array2DRowFieldMatrix;
 import org.apache.commons.math3.linear.ArrayFieldVector;
-import org.apache.commons.math3.linear.FieldLUDecomposition;
 import org.apache.commons.math3.linear.FieldMatrix;
 import org.apache.commons.math3.linear.FieldVector;
 
@@ -40,6 +39,7 @@ import cartesian.coordinate.CCPoint;
 import cartesian.coordinate.CCPolygon;
 import cartesian.coordinate.CCSystem;
 
+import model.ExactLU;
 import model.LP;
 
 /**
@@ -402,8 +402,7 @@ class VisLP {
                 
                 try {
                     FieldVector<BigFraction> point =
-                            new FieldLUDecomposition<BigFraction>(sys)
-                                    .getSolver().getInverse().operate(bsys);
+                            new ExactLU(sys).getSolver().solve(bsys);
                     BigFraction x = point.getEntry(0);
                     BigFraction y = point.getEntry(1);
 
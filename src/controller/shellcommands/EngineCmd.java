@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package controller.shellcommands;
+
+import model.LP.Engine;
+import controller.Data;
+import lightshell.Command;
+import lightshell.Shell;
+
+public class EngineCmd extends Command {
+    protected String getLongHelp() {
+        return "Specify how the dictionary of a linear program is computed."
+             + " This only affects speed and memory use, and not the results"
+             + " of any calculations. The engine is used for every program"
+             + " added to the history after it is changed."
+             + System.getProperty("line.separator")
+             + "Not specifying any engine will output the engine currently in"
+             + " use."
+             + System.getProperty("line.separator")
+             + prettyEngine();
+    }
+
+
+    protected String getName() { return "engine"; }
+    protected String getShortHelp() {
+        return "choose how dictionaries are computed";
+    }
+
+    protected String getUsage() { return "engine (<engine>)"; }
+
+    protected String execute(String arg) {
+        if (arg == null || arg.length() == 0)
+            return String.format("Current engine: %s.", Data.engine);
+
+        try  {
+            Engine e = Engine.valueOf(arg);
+            Data.engine = e;
+            return String.format("Changed engine to %s.", e);
+        } catch (Exception e) {
+            return String.format("engine: Invalid engine '%s'.", arg);
+        }
+    }
+
+
+
+    /* Print out a pretty list of available engines. */
+    private String prettyEngine() {
+        String endl = System.getProperty("line.separator");
+        StringBuilder sb = new StringBuilder("AVAILABLE ENGINES");
+        sb.append(endl);
+        String delim = "";
+        for (Engine e : Engine.values()) {
+            String str = " " + e.toString();
+            sb.append(delim);
+            sb.append(Shell.indent(str, e.getDesc(), 20, 47));
+            delim = endl;
+        }
+        return sb.toString();
+    }
+}
@@ -162,8 +162,10 @@ public class Pivot extends Command {
     }
     
     private String output(LP curLp, boolean dual) {
-        if (dual) return Output.dual(curLp, Data.format);
-        return Output.primal(curLp, Data.format);
+        String out = dual ? Output.dual(curLp, Data.format)
+                          : Output.primal(curLp, Data.format);
+        if (!curLp.hasBounds()) return out;
+        return String.format("%s%nBound flips: %d", out, curLp.getFlips());
     }
     
     private String pivot(LP lp, boolean dual) {
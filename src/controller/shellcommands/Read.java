@@ -66,6 +66,8 @@ public class Read extends Command {
             
             LP lp = parser.lpfromfile();
             Data.addLp(lp);
+            Data.blocks = parser.getBlocks();
+            Data.network = parser.getNetwork();
             return "Read " + arg + " OK.";
         } catch (Exception e) {
             return "read: Error reading file: " + e.getLocalizedMessage();
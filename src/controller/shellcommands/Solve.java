@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package controller.shellcommands;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import output.Output;
+
+import org.apache.commons.math3.fraction.BigFraction;
+
+import model.Blocks;
+import model.Certificate;
+import model.DantzigWolfe;
+import model.LP;
+import model.NetworkSimplex;
+import model.Simplex;
+import model.UnboundedException;
+
+import controller.Data;
+import lightshell.Command;
+
+public class Solve extends Command {
+    @SuppressWarnings("serial")
+    protected Map<String, String> getExamples() {
+        return new LinkedHashMap<String, String>() {
+            {
+                put("solve",
+                    "Find an optimal basis using double precision numbers,"
+                  + " then compute its dictionary exactly. Exact pivots are"
+                  + " done only if the basis turns out not to be optimal."
+                    );
+
+                put("solve exact",
+                    "Run the simplex method using exact numbers only."
+                    );
+
+                put("solve dw",
+                    "Solve by Dantzig-Wolfe decomposition, with the"
+                  + " constraints linking the independent blocks found"
+                  + " automatically."
+                    );
+            }};
+    }
+
+
+    protected String getLongHelp() {
+        return "Run the simplex method on the current linear program until"
+             + " it is solved and print out its dictionary. Programs that are"
+             + " neither primally nor dually feasible are solved in two"
+             + " phases. Entering and leaving variables are chosen according"
+             + " to the largest coefficient rule."
+             + System.getProperty("line.separator")
+             + "A program read from a file that splits into independent"
+             + " blocks, sharing no variables, is solved a block at a time"
+             + " with the blocks in parallel, and the results are merged."
+             + " One whose constraints are a node-arc incidence matrix, as in"
+             + " transportation and min-cost flow problems, is solved by the"
+             + " network simplex method instead."
+             + System.getProperty("line.separator")
+             + "The result is checked against the original program by a"
+             + " certificate of optimality, infeasibility or unboundedness.";
+    }
+
+
+    protected String getName() { return "solve"; }
+    protected String getShortHelp() {
+        return "run the simplex method until the program is solved";
+    }
+
+    protected String getUsage() { return "solve (exact|dw)"; }
+
+    protected String execute(String arg) {
+        LP lp = Data.getCurrentProgram();
+        if (lp == null) return "solve: No current linear program loaded.";
+
+        boolean exact = arg != null && arg.equals("exact");
+        if (arg != null && arg.equals("dw")) return decompose(lp);
+        if (arg != null && !exact) {
+            return "solve: Unknown parameters. See 'help solve' for more"
+                 + " information.";
+        }
+
+        NetworkSimplex network = Data.network;
+        if (network != null && network.covers(lp)) return flow(network, lp);
+
+        Simplex simplex = new Simplex();
+        Blocks blocks = Data.blocks;
+        boolean split = blocks != null && blocks.size() > 1
+                     && blocks.covers(lp);
+        try {
+            LP curLp;
+            if (split) curLp = simplex.solve(blocks, !exact);
+            else curLp = exact ? simplex.solve(lp) : simplex.solveFast(lp);
+            Data.addLp(curLp);
+
+            String flips = "";
+            if (curLp.hasBounds()) {
+                flips = String.format(" %d bound flips.",
+                                      simplex.getBoundFlips());
+            }
+            if (split) {
+                flips += String.format(" Solved as %d independent blocks.",
+                                       blocks.size());
+            }
+            return String.format("%s%nSolved using %d floating point and %d"
+                               + " exact pivots.%s %s",
+                                 Output.primal(curLp, Data.format),
+                                 simplex.getFloatPivots(),
+                                 simplex.getExactPivots(), flips,
+                                 verified(curLp.certificate(), lp));
+        } catch (UnboundedException e) {
+            return String.format("solve: %s. %s", e.getLocalizedMessage(),
+                                 verified(e.getCertificate(), lp));
+        } catch (RuntimeException e) {
+            return String.format("solve: %s", e.getLocalizedMessage());
+        }
+    }
+
+
+
+    /* Solve by the network simplex method. */
+    private String flow(NetworkSimplex network, LP lp) {
+        try {
+            LP curLp = network.solve();
+            Data.addLp(curLp);
+            return String.format("%s%nSolved by the network simplex method"
+                               + " in %d pivots. %s",
+                                 Output.primal(curLp, Data.format),
+                                 network.getPivots(),
+                                 verified(curLp.certificate(), lp));
+        } catch (UnboundedException e) {
+            return String.format("solve: %s. %s", e.getLocalizedMessage(),
+                                 verified(e.getCertificate(), lp));
+        } catch (RuntimeException e) {
+            return String.format("solve: %s", e.getLocalizedMessage());
+        }
+    }
+
+
+
+    /* Solve by Dantzig-Wolfe decomposition and report the optimal point. */
+    private String decompose(LP lp) {
+        DantzigWolfe dw;
+        try {
+            dw = new DantzigWolfe(lp);
+        } catch (IllegalArgumentException e) {
+            return String.format("solve: %s", e.getLocalizedMessage());
+        }
+
+        StringBuilder sb = new StringBuilder();
+        try {
+            BigFraction[] x = dw.solve();
+            String obj = Output.number(dw.getObjVal(), Data.format);
+            sb.append(String.format("ζ = %s%n", obj));
+
+            /* The blocks are fresh programs, with the variables in order. */
+            Blocks blocks = dw.getBlocks();
+            String[] names = new String[x.length];
+            for (int k = 0; k < blocks.size(); k++) {
+                int[] cols = blocks.getColumns(k);
+                String[] bn = blocks.getBlock(k).getNonBasic();
+                for (int j = 0; j < cols.length; j++) names[cols[j]] = bn[j];
+            }
+            for (int j = 0; j < x.length; j++) {
+                sb.append(String.format("%s = %s%n", names[j],
+                                        Output.number(x[j], Data.format)));
+            }
+        } catch (UnboundedException e) {
+            sb.append(String.format("solve: %s.%n", e.getLocalizedMessage()));
+        } catch (RuntimeException e) {
+            return String.format("solve: %s", e.getLocalizedMessage());
+        }
+
+        long total = 0;
+        long slowest = 0;
+        for (long t : dw.getBlockTimes()) {
+            total += t;
+            slowest = Math.max(slowest, t);
+        }
+        sb.append(String.format("Solved by Dantzig-Wolfe decomposition of %d"
+                              + " blocks and %d linking constraints in %d"
+                              + " master iterations, with %d columns.%n",
+                                dw.getBlocks().size(),
+                                dw.getBlocks().getLinking().length,
+                                dw.getIterations(), dw.getColumns()));
+        sb.append(String.format("Master problems took %.1f ms, subproblems"
+                              + " %.1f ms (%.1f ms in the slowest block). %s",
+                                dw.getMasterTime() / 1e6, total / 1e6,
+                                slowest / 1e6,
+                                verified(dw.getCertificate(), lp)));
+        return sb.toString();
+    }
+
+
+
+    /* Check a certificate against the program it was found for. */
+    private String verified(Certificate cert, LP lp) {
+        if (cert == null) return "No certificate for programs with bounds.";
+        String type = cert.getType().toString().toLowerCase(Locale.ROOT);
+        if (cert.verify(lp)) {
+            return String.format("Certificate of %s verified.", type);
+        }
+        return String.format("Certificate of %s could NOT be verified.", type);
+    }
+}
@@ -0,0 +1,497 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.apache.commons.math3.linear.Array2DRowFieldMatrix;
+import org.apache.commons.math3.linear.ArrayFieldVector;
+import org.apache.commons.math3.linear.FieldMatrix;
+import org.apache.commons.math3.linear.FieldVector;
+
+/**
+ * A linear program split into independent blocks.
+ * <p>
+ * Two variables are in the same block if they appear in a common
+ * constraint, directly or through other variables: the blocks are the
+ * connected components of the graph linking each constraint to the
+ * variables it has non-zero coefficients for. A program that is
+ * block-diagonal after reordering its rows and columns thus falls apart
+ * into one {@code LP} per block, which can be solved independently, by
+ * {@link Simplex#solve(Blocks, boolean)}. Variables in no constraint and
+ * constraints with no variables are put in the first block.
+ * </p>
+ * <p>
+ * Linking constraints can be left out of the blocks, as for Dantzig-Wolfe
+ * decomposition (see {@link DantzigWolfe}). {@link #merge} is then of no
+ * use, as the blocks ignore the linking constraints.
+ * </p>
+ * <p>
+ * The program of a block is built the first time it is asked for, so a
+ * program that does not split costs no copy of itself.
+ * </p>
+ * <p>
+ * The results of the blocks are merged into a result for the whole
+ * program by {@link #merge}. Since the dictionary of the whole program is
+ * block-diagonal too, the merged dictionary is read off the blocks without
+ * solving for it.
+ * </p>
+ *
+ * @author  Andreas Halle
+ * @see     model.Simplex
+ */
+public class Blocks {
+    private final LP lp;
+    private final AtomicReferenceArray<LP> blocks; // Built when first asked.
+    private final int[][] cols; // Variable of lp of each block variable.
+    private final int[][] rows; // Constraint of lp of each block constraint.
+    private final int[] linking;
+
+
+
+    /**
+     * Split the original program of the given linear program into blocks.
+     *
+     * @param lp
+     *        A linear program.
+     */
+    public Blocks(LP lp) {
+        this(lp, new int[0]);
+    }
+
+
+
+    /**
+     * Split the original program of the given linear program into blocks,
+     * leaving out the given linking constraints. These belong to no block,
+     * so they do not link the blocks of the variables they have.
+     *
+     * @param  lp
+     *         A linear program.
+     * @param  linking
+     *         Indices of linking constraints.
+     * @throws IllegalArgumentException
+     *         If an index is not that of a constraint.
+     */
+    public Blocks(LP lp, int[] linking) {
+        this.lp = lp;
+        FieldMatrix<BigFraction> A = lp.coefficients();
+        int m = lp.getNoBasic();
+        int n = lp.getNoNonBasic();
+
+        boolean[] skip = new boolean[m];
+        for (int i : linking) {
+            if (i < 0 || i >= m) {
+                String e = String.format("Illegal operation: No constraint"
+                                       + " %d.", i);
+                throw new IllegalArgumentException(e);
+            }
+            skip[i] = true;
+        }
+        this.linking = linking.clone();
+        Arrays.sort(this.linking);
+
+        int[] parent = components(pattern(A, m, n), n, skip);
+
+        /* Number the components with both constraints and variables. */
+        int[] block = new int[m + n];
+        Arrays.fill(block, -1);
+        boolean[] hasRow = new boolean[m + n];
+        for (int i = 0; i < m; i++) {
+            if (!skip[i]) hasRow[find(parent, i)] = true;
+        }
+        int count = 0;
+        for (int j = 0; j < n; j++) {
+            int r = find(parent, m + j);
+            if (hasRow[r] && block[r] == -1) block[r] = count++;
+        }
+
+        if (count == 0) count = 1;
+        List<List<Integer>> rl = new ArrayList<List<Integer>>();
+        List<List<Integer>> cl = new ArrayList<List<Integer>>();
+        for (int k = 0; k < count; k++) {
+            rl.add(new ArrayList<Integer>());
+            cl.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < m; i++) {
+            if (skip[i]) continue;
+            rl.get(Math.max(0, block[find(parent, i)])).add(i);
+        }
+        for (int j = 0; j < n; j++) {
+            cl.get(Math.max(0, block[find(parent, m + j)])).add(j);
+        }
+
+        blocks = new AtomicReferenceArray<LP>(count);
+        rows = new int[count][];
+        cols = new int[count][];
+        for (int k = 0; k < count; k++) {
+            rows[k] = toArray(rl.get(k));
+            cols[k] = toArray(cl.get(k));
+        }
+    }
+
+
+
+    /* The variables with non-zero coefficients in each constraint. */
+    static int[][] pattern(FieldMatrix<BigFraction> A, int m, int n) {
+        int[][] nz = new int[m][];
+        int[] row = new int[n];
+        for (int i = 0; i < m; i++) {
+            int len = 0;
+            for (int j = 0; j < n; j++) {
+                if (!Rationals.isZero(entry(A, i, j))) row[len++] = j;
+            }
+            nz[i] = Arrays.copyOf(row, len);
+        }
+        return nz;
+    }
+
+
+
+    /* Entry (i, j) of A, unreduced if A is a CompactMatrix. */
+    private static BigFraction entry(FieldMatrix<BigFraction> A, int i,
+                                     int j) {
+        if (A instanceof CompactMatrix) {
+            return ((CompactMatrix) A).getNumerator(i, j);
+        }
+        return A.getEntry(i, j);
+    }
+
+
+
+    /*
+     * Union-find over the constraints 0..m-1 and the variables m..m+n-1 of
+     * a program with the given pattern, leaving out skipped constraints.
+     * Return the parent array, for find().
+     */
+    static int[] components(int[][] nz, int n, boolean[] skip) {
+        int m = nz.length;
+        int[] parent = new int[m + n];
+        for (int k = 0; k < m + n; k++) parent[k] = k;
+        for (int i = 0; i < m; i++) {
+            if (skip[i]) continue;
+            for (int j : nz[i]) {
+                int ri = find(parent, i);
+                int rj = find(parent, m + j);
+                if (ri != rj) parent[ri] = rj;
+            }
+        }
+        return parent;
+    }
+
+
+
+    /*
+     * The number of blocks of a program with the given pattern, leaving out
+     * skipped constraints, as the constructor counts them.
+     */
+    static int count(int[][] nz, int n, boolean[] skip) {
+        int m = nz.length;
+        int[] parent = components(nz, n, skip);
+        boolean[] hasRow = new boolean[m + n];
+        for (int i = 0; i < m; i++) {
+            if (!skip[i]) hasRow[find(parent, i)] = true;
+        }
+        boolean[] seen = new boolean[m + n];
+        int count = 0;
+        for (int j = 0; j < n; j++) {
+            int r = find(parent, m + j);
+            if (hasRow[r] && !seen[r]) {
+                seen[r] = true;
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+
+    static int find(int[] parent, int k) {
+        while (parent[k] != k) {
+            parent[k] = parent[parent[k]];
+            k = parent[k];
+        }
+        return k;
+    }
+
+
+
+    private static int[] toArray(List<Integer> list) {
+        int[] a = new int[list.size()];
+        for (int k = 0; k < a.length; k++) a[k] = list.get(k);
+        return a;
+    }
+
+
+
+    /* The program of the given constraints and variables of lp. */
+    private LP block(int[] r, int[] cs) {
+        int n = lp.getNoNonBasic();
+        FieldMatrix<BigFraction> A = lp.coefficients();
+        FieldVector<BigFraction> b = lp.getConsValues();
+        BigFraction[][] Nd = new BigFraction[r.length][cs.length];
+        BigFraction[] bd = new BigFraction[r.length];
+        BigFraction[] cd = new BigFraction[cs.length];
+        FieldVector<BigFraction> c = lp.getObjFunction();
+        for (int i = 0; i < r.length; i++) {
+            for (int j = 0; j < cs.length; j++) {
+                Nd[i][j] = A.getEntry(r[i], cs[j]);
+            }
+            bd[i] = b.getEntry(r[i]);
+        }
+        for (int j = 0; j < cs.length; j++) cd[j] = c.getEntry(cs[j]);
+
+        HashMap<Integer, String> x = new HashMap<Integer, String>();
+        for (int j = 0; j < cs.length; j++) x.put(j, lp.name(cs[j]));
+        LP block = new LP(new Array2DRowFieldMatrix<BigFraction>(Nd, false),
+                          new ArrayFieldVector<BigFraction>(bd, false),
+                          new ArrayFieldVector<BigFraction>(cd, false), x);
+        for (int i = 0; i < r.length; i++) {
+            x.put(cs.length + i, lp.name(n + r[i]));
+        }
+
+        if (lp.hasBounds()) {
+            BigFraction[] ub = new BigFraction[cs.length];
+            for (int j = 0; j < cs.length; j++) ub[j] = lp.upper(cs[j]);
+            block = block.bounds(ub);
+        }
+        return block.engine(lp.getEngine());
+    }
+
+
+
+    /**
+     * @return
+     *         The number of blocks.
+     */
+    public int size() {
+        return blocks.length();
+    }
+
+
+
+    /**
+     * @param  k
+     *         A block number, 0 &lt;= k &lt; {@link #size()}.
+     * @return
+     *         The program of block k, with every variable non-basic at zero.
+     */
+    public LP getBlock(int k) {
+        LP block = blocks.get(k);
+        if (block == null) {
+            /* Blocks may be asked for in parallel. The first one built wins. */
+            blocks.compareAndSet(k, null, block(rows[k], cols[k]));
+            block = blocks.get(k);
+        }
+        return block;
+    }
+
+
+
+    /**
+     * @param  k
+     *         A block number.
+     * @return
+     *         The variable of the whole program of each variable of block k.
+     */
+    public int[] getColumns(int k) {
+        return cols[k].clone();
+    }
+
+
+
+    /**
+     * @param  k
+     *         A block number.
+     * @return
+     *         The constraint of the whole program of each constraint of
+     *         block k.
+     */
+    public int[] getRows(int k) {
+        return rows[k].clone();
+    }
+
+
+
+    /**
+     * @return
+     *         The linking constraints left out of the blocks, in order.
+     */
+    public int[] getLinking() {
+        return linking.clone();
+    }
+
+
+
+    /**
+     * @return
+     *         The program that was split into blocks.
+     */
+    public LP getProgram() {
+        return lp;
+    }
+
+
+
+    /**
+     * Return whether the given linear program has the same original
+     * program as the one split into blocks, whatever its basis.
+     */
+    public boolean covers(LP lp) {
+        return this.lp.sameProgram(lp);
+    }
+
+
+
+    /**
+     * Merge the results of the blocks into a result for the whole program.
+     * The whole program is infeasible if a block is, and otherwise
+     * unbounded if a block is. Certificates of the blocks are extended to
+     * certificates of the whole program.
+     *
+     * @param  solved
+     *         The optimal program of each block, or null if solving it threw
+     *         an exception.
+     * @param  failed
+     *         The exception solving each block threw, or null.
+     * @return
+     *         The whole program with the merged optimal basis.
+     * @throws UnboundedException
+     *         If the whole program is infeasible or unbounded.
+     * @throws IllegalArgumentException
+     *         If linking constraints were left out of the blocks.
+     * @throws RuntimeException
+     *         If solving a block threw any other exception.
+     */
+    public LP merge(LP[] solved, RuntimeException[] failed) {
+        if (linking.length > 0) {
+            throw new IllegalArgumentException("Illegal operation: Blocks"
+                    + " without their linking constraints cannot be merged.");
+        }
+        int unbounded = -1;
+        for (int k = 0; k < blocks.length(); k++) {
+            RuntimeException e = failed[k];
+            if (e == null) continue;
+            if (!(e instanceof UnboundedException)) throw e;
+            if (infeasible((UnboundedException) e)) throw infeasible(k, e);
+            if (unbounded == -1) unbounded = k;
+        }
+        if (unbounded != -1) throw unbounded(unbounded, solved, failed);
+
+        int m = lp.getNoBasic();
+        int n = lp.getNoNonBasic();
+        int[] nBi = new int[m];
+        int[] nNi = new int[n];
+        FieldVector<BigFraction> nb_ = Rationals.zero(m);
+        FieldVector<BigFraction> nc_ = Rationals.zero(n);
+        boolean[] nup = lp.hasBounds() ? new boolean[n + m] : null;
+
+        int bi = 0;
+        int ni = 0;
+        for (int k = 0; k < blocks.length(); k++) {
+            LP s = solved[k];
+            int[] Bi = s.getBasicIndices();
+            int[] Ni = s.getNonBasicIndices();
+            for (int i = 0; i < Bi.length; i++, bi++) {
+                nBi[bi] = variable(k, Bi[i]);
+                nb_.setEntry(bi, s.getBasis().getEntry(i));
+            }
+            for (int j = 0; j < Ni.length; j++, ni++) {
+                nNi[ni] = variable(k, Ni[j]);
+                nc_.setEntry(ni, s.reducedCosts().getEntry(j));
+                if (nup != null) nup[nNi[ni]] = s.atUpper(Ni[j]);
+            }
+        }
+        return lp.snapshot(nBi, nNi, nb_, nc_, nup);
+    }
+
+
+
+    /* The variable of the whole program matching variable v of block k. */
+    private int variable(int k, int v) {
+        int nk = cols[k].length;
+        if (v < nk) return cols[k][v];
+        return lp.getNoNonBasic() + rows[k][v - nk];
+    }
+
+
+
+    private static boolean infeasible(UnboundedException e) {
+        Certificate cert = e.getCertificate();
+        if (cert != null) return cert.getType() == Certificate.Type.INFEASIBLE;
+        return "Program is infeasible".equals(e.getMessage());
+    }
+
+
+
+    /* Block k is infeasible. Its Farkas ray is zero outside the block. */
+    private UnboundedException infeasible(int k, RuntimeException e) {
+        Certificate cert = ((UnboundedException) e).getCertificate();
+        Certificate whole = null;
+        if (cert != null) {
+            BigFraction[] y = zeros(lp.getNoBasic());
+            BigFraction[] yk = cert.getMultipliers();
+            for (int i = 0; i < yk.length; i++) y[rows[k][i]] = yk[i];
+            whole = Certificate.infeasible(y);
+        }
+        return new UnboundedException("Program is infeasible", whole);
+    }
+
+
+
+    /*
+     * Block k is unbounded and no block is infeasible. The ray of block k
+     * is zero outside the block, and the point is made of the optimal or
+     * feasible points of every block.
+     */
+    private UnboundedException unbounded(int k, LP[] solved,
+                                         RuntimeException[] failed) {
+        if (lp.hasBounds()) {
+            return new UnboundedException("Program is unbounded", null);
+        }
+        int n = lp.getNoNonBasic();
+        BigFraction[] x = zeros(n);
+        BigFraction[] d = zeros(n);
+        for (int l = 0; l < blocks.length(); l++) {
+            BigFraction[] xl = (solved[l] != null)
+                    ? solved[l].point()
+                    : ((UnboundedException) failed[l]).getCertificate()
+                                                       .getPoint();
+            for (int j = 0; j < xl.length; j++) x[cols[l][j]] = xl[j];
+        }
+        BigFraction[] dk = ((UnboundedException) failed[k]).getCertificate()
+                                                            .getRay();
+        for (int j = 0; j < dk.length; j++) d[cols[k][j]] = dk[j];
+        return new UnboundedException("Program is unbounded",
+                                      Certificate.unbounded(x, d));
+    }
+
+
+
+    private static BigFraction[] zeros(int len) {
+        BigFraction[] a = new BigFraction[len];
+        Arrays.fill(a, BigFraction.ZERO);
+        return a;
+    }
+}
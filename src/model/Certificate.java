@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.apache.commons.math3.linear.FieldMatrix;
+import org.apache.commons.math3.linear.FieldVector;
+
+/**
+ * A certificate proving that a linear program on the form
+ * <pre><blockquote>
+ * maximize c x subject to N x <= b, x >= 0
+ * </blockquote></pre>
+ * is optimal, infeasible or unbounded.
+ * <ul>
+ * <li>OPTIMAL: a feasible point x and dual multipliers y >= 0 with
+ *     y N >= c and c x = y b.</li>
+ *
+ * <li>INFEASIBLE: a Farkas ray y >= 0 with y N >= 0 and y b < 0.</li>
+ *
+ * <li>UNBOUNDED: a feasible point x and a ray d >= 0 with N d <= 0 and
+ *     c d > 0.</li>
+ * </ul>
+ * A certificate can be checked against the original program by
+ * {@link #verify(FieldMatrix, FieldVector, FieldVector)} without solving it
+ * again.
+ *
+ * @author  Andreas Halle
+ * @see     model.LP
+ */
+public class Certificate {
+    public static enum Type { OPTIMAL, INFEASIBLE, UNBOUNDED }
+
+    /* Rows or columns checked by each task. */
+    private static final int BLOCK = 32;
+
+    private final Type type;
+    private final BigFraction[] x;
+    private final BigFraction[] y;
+    private final BigFraction[] d;
+
+
+
+    private Certificate(Type type, BigFraction[] x, BigFraction[] y,
+                        BigFraction[] d) {
+        this.type = type;
+        this.x = x;
+        this.y = y;
+        this.d = d;
+    }
+
+
+
+    /**
+     * @param  x
+     *         An optimal point.
+     * @param  y
+     *         Optimal dual multipliers, one for each constraint.
+     * @return
+     *         A certificate of optimality.
+     */
+    public static Certificate optimal(BigFraction[] x, BigFraction[] y) {
+        return new Certificate(Type.OPTIMAL, x, y, null);
+    }
+
+
+
+    /**
+     * @param  y
+     *         A Farkas ray, one multiplier for each constraint.
+     * @return
+     *         A certificate of infeasibility.
+     */
+    public static Certificate infeasible(BigFraction[] y) {
+        return new Certificate(Type.INFEASIBLE, null, y, null);
+    }
+
+
+
+    /**
+     * @param  x
+     *         A feasible point.
+     * @param  d
+     *         A ray along which the objective function grows without bound.
+     * @return
+     *         A certificate of unboundedness.
+     */
+    public static Certificate unbounded(BigFraction[] x, BigFraction[] d) {
+        return new Certificate(Type.UNBOUNDED, x, null, d);
+    }
+
+
+
+    /**
+     * Check this certificate against a linear program. Rows and columns of
+     * the constraint matrix are checked in parallel.
+     *
+     * @param  N
+     *         The coefficients of the constraints in the original program.
+     * @param  b
+     *         The upper bounds on the constraints in the original program.
+     * @param  c
+     *         The coefficients of the objective function in the original
+     *         program.
+     * @return
+     *         True if the certificate proves what it claims. False otherwise.
+     */
+    public boolean verify(FieldMatrix<BigFraction> N, FieldVector<BigFraction> b,
+                          FieldVector<BigFraction> c) {
+        BigFraction[][] A = N.getData();
+        BigFraction[] bd = b.toArray();
+        BigFraction[] cd = c.toArray();
+        int m = A.length;
+        int n = cd.length;
+
+        switch (type) {
+        case OPTIMAL:
+            if (x.length != n || y.length != m) return false;
+            if (!nonNegative(x) || !nonNegative(y)) return false;
+            if (dot(cd, x).compareTo(dot(bd, y).value()) != 0) return false;
+            return Parallel.pool().invoke(new Check(A, bd, cd, 0, m, false))
+                && Parallel.pool().invoke(new Check(A, bd, cd, 0, n, true));
+        case INFEASIBLE:
+            if (y.length != m) return false;
+            if (!nonNegative(y)) return false;
+            if (dot(bd, y).compareTo(BigFraction.ZERO) >= 0) return false;
+            return Parallel.pool().invoke(new Check(A, bd, null, 0, n, true));
+        case UNBOUNDED:
+            if (x.length != n || d.length != n) return false;
+            if (!nonNegative(x) || !nonNegative(d)) return false;
+            if (dot(cd, d).compareTo(BigFraction.ZERO) <= 0) return false;
+            return Parallel.pool().invoke(new Check(A, bd, cd, 0, m, false));
+        default:
+            return false;
+        }
+    }
+
+
+
+    /**
+     * Check this certificate against the original program of the given
+     * linear program.
+     *
+     * @param  lp
+     *         A linear program.
+     * @return
+     *         True if the certificate proves what it claims. False otherwise.
+     */
+    public boolean verify(LP lp) {
+        FieldMatrix<BigFraction> cons = lp.getConstraints();
+        int m = cons.getRowDimension();
+        int n = cons.getColumnDimension() - 1;
+        return verify(cons.getSubMatrix(0, m-1, 0, n-1), lp.getConsValues(),
+                      lp.getObjFunction());
+    }
+
+
+
+    /*
+     * Check the rows (N x <= b, N d <= 0) or the columns (y N >= c, or
+     * y N >= 0 if c is null) in the range [lo, hi).
+     */
+    @SuppressWarnings("serial")
+    private class Check extends RecursiveTask<Boolean> {
+        private final BigFraction[][] A;
+        private final BigFraction[] b;
+        private final BigFraction[] c;
+        private final int lo;
+        private final int hi;
+        private final boolean columns;
+
+        Check(BigFraction[][] A, BigFraction[] b, BigFraction[] c,
+              int lo, int hi, boolean columns) {
+            this.A = A;
+            this.b = b;
+            this.c = c;
+            this.lo = lo;
+            this.hi = hi;
+            this.columns = columns;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if (hi - lo > BLOCK) {
+                int mid = (lo + hi) >>> 1;
+                Check left = new Check(A, b, c, lo, mid, columns);
+                left.fork();
+                boolean right = new Check(A, b, c, mid, hi, columns).compute();
+                return left.join() && right;
+            }
+
+            for (int k = lo; k < hi; k++) {
+                if (!(columns ? column(k) : row(k))) return false;
+            }
+            return true;
+        }
+
+        private boolean row(int i) {
+            if (dot(A[i], x).compareTo(b[i]) > 0) return false;
+            return d == null || dot(A[i], d).compareTo(BigFraction.ZERO) <= 0;
+        }
+
+        private boolean column(int j) {
+            RationalSum sum = new RationalSum();
+            for (int i = 0; i < A.length; i++) sum.addProduct(A[i][j], y[i]);
+            BigFraction min = (c == null) ? BigFraction.ZERO : c[j];
+            return sum.compareTo(min) >= 0;
+        }
+    }
+
+
+
+    private static RationalSum dot(BigFraction[] u, BigFraction[] v) {
+        RationalSum sum = new RationalSum();
+        for (int i = 0; i < u.length; i++) sum.addProduct(u[i], v[i]);
+        return sum;
+    }
+
+
+
+    private static boolean nonNegative(BigFraction[] v) {
+        for (BigFraction bf : v) {
+            if (bf.compareTo(BigFraction.ZERO) < 0) return false;
+        }
+        return true;
+    }
+
+
+
+    public Type getType() {
+        return type;
+    }
+
+
+
+    /**
+     * @return
+     *         The point of an optimality or unboundedness certificate.
+     */
+    public BigFraction[] getPoint() {
+        return x;
+    }
+
+
+
+    /**
+     * @return
+     *         The dual multipliers of an optimality certificate, or the Farkas
+     *         ray of an infeasibility certificate.
+     */
+    public BigFraction[] getMultipliers() {
+        return y;
+    }
+
+
+
+    /**
+     * @return
+     *         The ray of an unboundedness certificate.
+     */
+    public BigFraction[] getRay() {
+        return d;
+    }
+}
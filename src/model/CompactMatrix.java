@@ -0,0 +1,446 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.apache.commons.math3.linear.AbstractFieldMatrix;
+import org.apache.commons.math3.linear.FieldMatrix;
+import org.apache.commons.math3.linear.FieldVector;
+import org.apache.commons.math3.linear.MatrixDimensionMismatchException;
+
+/**
+ * A matrix of {@code BigFraction}s stored with one denominator per column.
+ * <p>
+ * The entries of a dictionary often share a denominator within a column,
+ * while every {@code BigFraction} holds its own numerator and denominator.
+ * Here each column keeps a single positive denominator, the least common
+ * multiple of the denominators of its entries, and one numerator per entry.
+ * Numerators are stored as {@code long}s as long as all of a column's fit,
+ * and as {@code BigInteger}s otherwise. Entries are reduced when read, and
+ * small integers come from the cache of {@link Rationals}.
+ * </p>
+ * <p>
+ * After many pivots the denominators of a column may have few factors in
+ * common, so that their least common multiple is much larger than any of
+ * them. A column whose numerators would grow by more than the size of the
+ * {@code BigFraction}s they replace is stored as {@code BigFraction}s.
+ * </p>
+ * <p>
+ * Setting an entry with a denominator that does not divide the column's
+ * rescales the column. Setting a whole column starts it anew. A copy
+ * shares the columns of the original until either sets an entry in them,
+ * so that a pivot that swaps one column copies only that column.
+ * </p>
+ * <p>
+ * Reading an entry reduces a new {@code BigFraction}. Loops over many
+ * entries can read the numerators and the shared denominator of a column
+ * with {@link #getNumerator} and {@link #getDenominator} instead, and divide
+ * once per column. Run {@code ant bench} for the memory used by a
+ * dictionary stored either way.
+ * </p>
+ *
+ * @author  Andreas Halle
+ * @see     model.LP
+ */
+final class CompactMatrix extends AbstractFieldMatrix<BigFraction> {
+    /* Estimated size in bits of a BigFraction beside its numerator. */
+    private static final int OVERHEAD = 1024;
+
+    private final int m;
+    private final int n;
+
+    private final BigInteger[] den;     // Denominator of each column.
+    private final long[][] small;       // Numerators of a column, or null.
+    private final BigInteger[][] big;   // Numerators if they don't fit.
+    private final BigFraction[][] frac; // Entries if not worth compressing.
+    private final boolean[] shared;     // Column arrays another copy has.
+
+    /* Columns of the non-zeros of each row, or null if not asked for. */
+    private volatile int[][] pattern;
+
+
+
+    /**
+     * Initialize an m x n matrix of zeros. Either dimension may be zero.
+     *
+     * @param m
+     *        Number of rows.
+     * @param n
+     *        Number of columns.
+     */
+    CompactMatrix(int m, int n) {
+        super(BigFraction.ONE.getField());
+        this.m = m;
+        this.n = n;
+        den = new BigInteger[n];
+        small = new long[n][];
+        big = new BigInteger[n][];
+        frac = new BigFraction[n][];
+        shared = new boolean[n];
+        for (int j = 0; j < n; j++) {
+            den[j] = BigInteger.ONE;
+            small[j] = new long[m];
+        }
+    }
+
+
+
+    /*
+     * A copy of the given matrix, sharing its columns until either matrix
+     * sets an entry in them.
+     */
+    private CompactMatrix(CompactMatrix M) {
+        super(BigFraction.ONE.getField());
+        m = M.m;
+        n = M.n;
+        den = M.den.clone();
+        small = M.small.clone();
+        big = M.big.clone();
+        frac = M.frac.clone();
+        shared = new boolean[n];
+        Arrays.fill(shared, true);
+        Arrays.fill(M.shared, true);
+        pattern = M.pattern;
+    }
+
+
+
+    /**
+     * Return a compact copy of the given matrix.
+     *
+     * @param  M
+     *         A {@code FieldMatrix}.
+     * @return
+     *         A {@code CompactMatrix} equal to {@code M}.
+     */
+    static CompactMatrix of(FieldMatrix<BigFraction> M) {
+        if (M instanceof CompactMatrix) return new CompactMatrix(
+                (CompactMatrix) M);
+        return of(M.getData(), M.getColumnDimension());
+    }
+
+
+
+    /**
+     * Return a compact copy of the given array of rows. The columns are
+     * compressed in parallel.
+     *
+     * @param  A
+     *         A rectangular array, possibly without rows.
+     * @param  n
+     *         Number of columns.
+     * @return
+     *         A {@code CompactMatrix} with the entries of {@code A}.
+     */
+    static CompactMatrix of(final BigFraction[][] A, int n) {
+        final CompactMatrix M = new CompactMatrix(A.length, n);
+        Parallel.rows(M.n, M.m, new Parallel.Rows() {
+            public void run(int lo, int hi) {
+                BigFraction[] col = new BigFraction[M.m];
+                for (int j = lo; j < hi; j++) {
+                    for (int i = 0; i < M.m; i++) col[i] = A[i][j];
+                    M.store(j, col);
+                }
+            }
+        });
+        return M;
+    }
+
+
+
+    /* Replace column j by the given entries. */
+    private void store(int j, BigFraction[] col) {
+        BigInteger d = BigInteger.ONE;
+        for (BigFraction f : col) d = lcm(d, f.getDenominator());
+
+        long grow = 0;
+        long save = 0;
+        for (BigFraction f : col) {
+            if (Rationals.isZero(f)) continue;
+            int bits = f.getDenominator().bitLength();
+            grow += d.bitLength() - bits;
+            save += bits + OVERHEAD;
+        }
+        pattern = null;
+        shared[j] = false;
+        if (grow > save) {
+            den[j] = null;
+            small[j] = null;
+            big[j] = null;
+            frac[j] = col.clone();
+            return;
+        }
+
+        BigInteger[] num = new BigInteger[m];
+        for (int i = 0; i < m; i++) num[i] = scale(col[i], d);
+        store(j, d, num);
+    }
+
+
+
+    /* Replace column j by the given numerators over d. */
+    private void store(int j, BigInteger d, BigInteger[] num) {
+        pattern = null;
+        shared[j] = false;
+        den[j] = d;
+        frac[j] = null;
+        for (BigInteger v : num) {
+            if (v.bitLength() > 63) {
+                small[j] = null;
+                big[j] = num;
+                return;
+            }
+        }
+        long[] s = new long[m];
+        for (int i = 0; i < m; i++) s[i] = num[i].longValue();
+        small[j] = s;
+        big[j] = null;
+    }
+
+
+
+    /* Numerators of column j. */
+    private BigInteger[] numerators(int j) {
+        if (big[j] != null) return big[j].clone();
+        BigInteger[] num = new BigInteger[m];
+        for (int i = 0; i < m; i++) num[i] = BigInteger.valueOf(small[j][i]);
+        return num;
+    }
+
+
+
+    /* Least common multiple of a and b, both positive. */
+    private static BigInteger lcm(BigInteger a, BigInteger b) {
+        if (b.equals(BigInteger.ONE) || a.equals(b)) return a;
+        if (a.equals(BigInteger.ONE)) return b;
+        return a.divide(a.gcd(b)).multiply(b);
+    }
+
+
+
+    /* Numerator of f over d, which must be a multiple of its denominator. */
+    private static BigInteger scale(BigFraction f, BigInteger d) {
+        BigInteger fd = f.getDenominator();
+        if (fd.equals(d)) return f.getNumerator();
+        return f.getNumerator().multiply(d.divide(fd));
+    }
+
+
+
+    @Override
+    public FieldMatrix<BigFraction> createMatrix(int rowDimension,
+                                                 int columnDimension) {
+        return new CompactMatrix(rowDimension, columnDimension);
+    }
+
+
+
+    @Override
+    public FieldMatrix<BigFraction> copy() {
+        return new CompactMatrix(this);
+    }
+
+
+
+    @Override
+    public BigFraction getEntry(int row, int column) {
+        checkRowIndex(row);
+        checkColumnIndex(column);
+        if (frac[column] != null) return frac[column][row];
+        BigInteger d = den[column];
+        if (small[column] != null) {
+            long v = small[column][row];
+            if (d.equals(BigInteger.ONE)) return Rationals.valueOf(v);
+            if (v == 0) return BigFraction.ZERO;
+            return Rationals.intern(new BigFraction(BigInteger.valueOf(v), d));
+        }
+        BigInteger v = big[column][row];
+        if (v.signum() == 0) return BigFraction.ZERO;
+        return Rationals.intern(new BigFraction(v, d));
+    }
+
+
+
+    /**
+     * @param  column
+     *         Index of a column.
+     * @return
+     *         The positive denominator shared by the entries of the column,
+     *         so that entry (i, j) is getNumerator(i, j) / getDenominator(j).
+     *         One if the column is stored as {@code BigFraction}s.
+     */
+    BigInteger getDenominator(int column) {
+        checkColumnIndex(column);
+        return (frac[column] != null) ? BigInteger.ONE : den[column];
+    }
+
+
+
+    /**
+     * Return the numerator of an entry over the denominator of its column,
+     * without reducing it. This is an integer unless the column is stored
+     * as {@code BigFraction}s, in which case it is the entry itself.
+     *
+     * @param  row
+     *         Index of a row.
+     * @param  column
+     *         Index of a column.
+     * @return
+     *         The numerator.
+     */
+    BigFraction getNumerator(int row, int column) {
+        checkRowIndex(row);
+        checkColumnIndex(column);
+        if (frac[column] != null) return frac[column][row];
+        if (small[column] != null) return Rationals.valueOf(small[column][row]);
+        return Rationals.intern(new BigFraction(big[column][row]));
+    }
+
+
+
+    /**
+     * Return the columns of the non-zero entries of each row, in increasing
+     * order. The result is kept until an entry is set, and must not be
+     * modified.
+     *
+     * @return
+     *         For each row, the indices of its non-zero columns.
+     */
+    int[][] rowPattern() {
+        int[][] p = pattern;
+        if (p != null) return p;
+
+        int[] count = new int[m];
+        for (int j = 0; j < n; j++) {
+            for (int i = 0; i < m; i++) {
+                if (!isZero(i, j)) count[i]++;
+            }
+        }
+        p = new int[m][];
+        for (int i = 0; i < m; i++) {
+            p[i] = new int[count[i]];
+            count[i] = 0;
+        }
+        for (int j = 0; j < n; j++) {
+            for (int i = 0; i < m; i++) {
+                if (!isZero(i, j)) p[i][count[i]++] = j;
+            }
+        }
+        pattern = p;
+        return p;
+    }
+
+
+
+    /* Whether entry (i, j) is zero, without reading it as a fraction. */
+    private boolean isZero(int i, int j) {
+        if (frac[j] != null) return Rationals.isZero(frac[j][i]);
+        if (small[j] != null) return small[j][i] == 0;
+        return big[j][i].signum() == 0;
+    }
+
+
+
+    @Override
+    public void setEntry(int row, int column, BigFraction value) {
+        checkRowIndex(row);
+        checkColumnIndex(column);
+        pattern = null;
+        if (frac[column] != null) {
+            if (shared[column]) frac[column] = frac[column].clone();
+            shared[column] = false;
+            frac[column][row] = value;
+            return;
+        }
+        BigInteger d = den[column];
+        BigInteger nd = lcm(d, value.getDenominator());
+
+        if (!nd.equals(d)) {
+            BigInteger k = nd.divide(d);
+            BigInteger[] num = numerators(column);
+            for (int i = 0; i < m; i++) num[i] = num[i].multiply(k);
+            num[row] = scale(value, nd);
+            store(column, nd, num);
+            return;
+        }
+
+        BigInteger v = scale(value, d);
+        if (small[column] != null && v.bitLength() <= 63) {
+            if (shared[column]) small[column] = small[column].clone();
+            shared[column] = false;
+            small[column][row] = v.longValue();
+        } else {
+            BigInteger[] num = numerators(column);
+            num[row] = v;
+            small[column] = null;
+            big[column] = num;
+            shared[column] = false;
+        }
+    }
+
+
+
+    @Override
+    public void addToEntry(int row, int column, BigFraction increment) {
+        setEntry(row, column, Rationals.add(getEntry(row, column), increment));
+    }
+
+
+
+    @Override
+    public void multiplyEntry(int row, int column, BigFraction factor) {
+        setEntry(row, column, Rationals.multiply(getEntry(row, column),
+                                                 factor));
+    }
+
+
+
+    @Override
+    public void setColumn(int column, BigFraction[] array) {
+        checkColumnIndex(column);
+        if (array.length != m) {
+            throw new MatrixDimensionMismatchException(array.length, 1, m, 1);
+        }
+        store(column, array);
+    }
+
+
+
+    @Override
+    public void setColumnVector(int column, FieldVector<BigFraction> vector) {
+        setColumn(column, vector.toArray());
+    }
+
+
+
+    @Override
+    public int getRowDimension() {
+        return m;
+    }
+
+
+
+    @Override
+    public int getColumnDimension() {
+        return n;
+    }
+}
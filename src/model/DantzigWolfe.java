@@ -0,0 +1,542 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.apache.commons.math3.linear.Array2DRowFieldMatrix;
+import org.apache.commons.math3.linear.ArrayFieldVector;
+import org.apache.commons.math3.linear.FieldMatrix;
+import org.apache.commons.math3.linear.FieldVector;
+
+/**
+ * Dantzig-Wolfe decomposition of a linear program on the form
+ * <pre><blockquote>
+ * maximize c x subject to N x <= b, x >= 0
+ * </blockquote></pre>
+ * whose constraints fall apart into independent blocks D_k x_k <= d_k once
+ * a few linking constraints A x <= b_L are left out.
+ * <p>
+ * Each block is a polyhedron X_k = {x_k >= 0 : D_k x_k <= d_k}. The
+ * restricted master problem combines the points of each X_k found so far
+ * convexly, and its rays non-negatively, subject to the linking
+ * constraints. The convexity constraint of each block is written as two
+ * inequalities. Each master iteration prices the blocks with the duals pi
+ * of the linking constraints and sigma_k of the convexity constraints: the
+ * subproblem of block k maximizes (c_k - pi A_k) x_k over X_k, and its
+ * optimal point enters the master if its value exceeds sigma_k, or its ray
+ * if it is unbounded. The subproblems are solved independently by
+ * {@link Simplex}, in parallel on the pool of {@link Parallel}. The method
+ * stops when no block has a column to add.
+ * </p>
+ * <p>
+ * While the restricted master is infeasible, the blocks are priced with its
+ * Farkas ray instead, for columns that the ray does not prove infeasible.
+ * If no block has one, the whole program is infeasible.
+ * </p>
+ * <p>
+ * Results come with certificates for the whole program: the duals of the
+ * last master and subproblems together are optimal dual multipliers, Farkas
+ * rays are combined the same way, and a ray of the master is a combination
+ * of rays of the blocks.
+ * </p>
+ *
+ * @author  Andreas Halle
+ * @see     model.Blocks
+ * @see     model.Simplex
+ */
+public class DantzigWolfe {
+    /* Give up after this many master iterations per variable. */
+    private static final int LIMIT = 50;
+
+    private final LP lp;
+    private final Blocks blocks;
+    private final int[] link;
+    private final FieldMatrix<BigFraction> A; // [N | b]
+    private final FieldVector<BigFraction> c;
+
+    /* Columns of the restricted master. */
+    private final List<Integer> owner = new ArrayList<Integer>();
+    private final List<Boolean> rays = new ArrayList<Boolean>();
+    private final List<BigFraction[]> vectors = new ArrayList<BigFraction[]>();
+    private final List<BigFraction[]> parts = new ArrayList<BigFraction[]>();
+    private final List<BigFraction> costs = new ArrayList<BigFraction>();
+
+    /* Duals of the rows of each block, from the last pricing. */
+    private BigFraction[][] duals;
+
+    private int iterations;
+    private long masterTime;
+    private long[] blockTime;
+
+    private BigFraction objVal;
+    private Certificate certificate;
+
+
+
+    /**
+     * Prepare the decomposition of the original program of the given linear
+     * program, with linking constraints found by {@link #linking(LP)}.
+     *
+     * @param  lp
+     *         A linear program.
+     * @throws IllegalArgumentException
+     *         If the program has upper bounds on its variables.
+     */
+    public DantzigWolfe(LP lp) {
+        this(lp, linking(lp));
+    }
+
+
+
+    /**
+     * Prepare the decomposition of the original program of the given linear
+     * program, with the given linking constraints.
+     *
+     * @param  lp
+     *         A linear program.
+     * @param  linking
+     *         Indices of the linking constraints.
+     * @throws IllegalArgumentException
+     *         If the program has upper bounds on its variables, or an index
+     *         is not that of a constraint.
+     */
+    public DantzigWolfe(LP lp, int[] linking) {
+        if (lp.hasBounds()) {
+            throw new IllegalArgumentException("Illegal operation: Programs"
+                    + " with upper bounds cannot be decomposed.");
+        }
+        this.lp = lp;
+        blocks = new Blocks(lp, linking);
+        link = blocks.getLinking();
+        A = lp.getConstraints();
+        c = lp.getObjFunction();
+    }
+
+
+
+    /**
+     * Find linking constraints that split the given program into more than
+     * one block: the fewest of the constraints with the most non-zero
+     * coefficients, at most half of them. Ties are broken by index.
+     *
+     * @param  lp
+     *         A linear program.
+     * @return
+     *         Indices of linking constraints, in order, or none if no such
+     *         constraints split the program.
+     */
+    public static int[] linking(LP lp) {
+        int m = lp.getNoBasic();
+        int n = lp.getNoNonBasic();
+        final int[][] nz = Blocks.pattern(lp.getConstraints(), m, n);
+
+        Integer[] order = new Integer[m];
+        for (int i = 0; i < m; i++) order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer i, Integer j) {
+                if (nz[i].length != nz[j].length) {
+                    return nz[j].length - nz[i].length;
+                }
+                return i - j;
+            }
+        });
+
+        boolean[] skip = new boolean[m];
+        for (int t = 0; t <= m / 2; t++) {
+            if (Blocks.count(nz, n, skip) > 1) {
+                int[] linking = new int[t];
+                for (int k = 0; k < t; k++) linking[k] = order[k];
+                Arrays.sort(linking);
+                return linking;
+            }
+            if (t < m) skip[order[t]] = true;
+        }
+        return new int[0];
+    }
+
+
+
+    /**
+     * Solve the program by Dantzig-Wolfe decomposition.
+     *
+     * @return
+     *         An optimal point of the program.
+     * @throws UnboundedException
+     *         If the program is unbounded or infeasible.
+     * @throws RuntimeException
+     *         If the iteration limit is reached.
+     */
+    public BigFraction[] solve() {
+        int count = blocks.size();
+        owner.clear();
+        vectors.clear();
+        rays.clear();
+        parts.clear();
+        costs.clear();
+        duals = new BigFraction[count][];
+        iterations = 0;
+        masterTime = 0;
+        blockTime = new long[count];
+        objVal = null;
+        certificate = null;
+
+        int limit = LIMIT * (lp.getNoBasic() + lp.getNoNonBasic());
+
+        /* Start from the optimum of each block on its own. */
+        price(new BigFraction[link.length + 2*count], false, true);
+        while (true) {
+            if (iterations++ >= limit) {
+                throw new RuntimeException("Iteration limit reached. The"
+                                         + " program may be cycling.");
+            }
+
+            LP master;
+            long start = System.nanoTime();
+            try {
+                master = new Simplex().solveFast(master());
+            } catch (UnboundedException e) {
+                Certificate cert = e.getCertificate();
+                if (cert.getType() == Certificate.Type.UNBOUNDED) {
+                    throw unbounded(cert);
+                }
+                BigFraction[] y = cert.getMultipliers();
+                if (!price(y, true, false)) throw infeasible(y);
+                continue;
+            } finally {
+                masterTime += System.nanoTime() - start;
+            }
+
+            BigFraction[] y = master.certificate().getMultipliers();
+            if (!price(y, false, false)) return optimal(master, y);
+        }
+    }
+
+
+
+    /*
+     * Price every block with the duals y of the master, or with its Farkas
+     * ray y if farkas, and add the columns found. On the first round, the
+     * optimal point of every block is added. Return whether any column was
+     * added.
+     */
+    private boolean price(BigFraction[] y, final boolean farkas,
+                          boolean first) {
+        final int count = blocks.size();
+        final LP[] problems = new LP[count];
+        for (int k = 0; k < count; k++) problems[k] = subproblem(k, y, farkas);
+
+        final LP[] solved = new LP[count];
+        final RuntimeException[] failed = new RuntimeException[count];
+        long cells = (long) lp.getNoBasic() * lp.getNoNonBasic();
+        Parallel.rows(count, (int) Math.min(Integer.MAX_VALUE, cells / count),
+                      new Parallel.Rows() {
+            public void run(int lo, int hi) {
+                for (int k = lo; k < hi; k++) {
+                    long start = System.nanoTime();
+                    try {
+                        solved[k] = new Simplex().solveFast(problems[k]);
+                    } catch (RuntimeException e) {
+                        failed[k] = e;
+                    }
+                    blockTime[k] += System.nanoTime() - start;
+                }
+            }
+        });
+
+        boolean added = false;
+        for (int k = 0; k < count; k++) {
+            if (failed[k] != null) {
+                if (!(failed[k] instanceof UnboundedException)) {
+                    throw failed[k];
+                }
+                Certificate cert = ((UnboundedException) failed[k])
+                                   .getCertificate();
+                if (cert.getType() == Certificate.Type.INFEASIBLE) {
+                    throw blockInfeasible(k, cert.getMultipliers());
+                }
+                if (first) add(k, cert.getPoint(), false);
+                add(k, cert.getRay(), true);
+                added = true;
+                continue;
+            }
+
+            duals[k] = solved[k].certificate().getMultipliers();
+            BigFraction sigma = sigma(y, k);
+            if (first || solved[k].objVal().compareTo(sigma) > 0) {
+                add(k, solved[k].point(), false);
+                added = true;
+            }
+        }
+        return added;
+    }
+
+
+
+    /*
+     * The subproblem of block k: maximize (c_k - pi A_k) x_k over X_k, or
+     * -pi A_k x_k if farkas, with pi the part of y for the linking
+     * constraints. Entries of y that are null count as zero.
+     */
+    private LP subproblem(int k, BigFraction[] y, boolean farkas) {
+        LP block = blocks.getBlock(k);
+        int[] cols = blocks.getColumns(k);
+        FieldVector<BigFraction> w = Rationals.zero(cols.length);
+        for (int j = 0; j < cols.length; j++) {
+            RationalSum sum = new RationalSum();
+            if (!farkas) sum.add(c.getEntry(cols[j]));
+            for (int l = 0; l < link.length; l++) {
+                if (y[l] == null) continue;
+                sum.subtractProduct(y[l], A.getEntry(link[l], cols[j]));
+            }
+            w.setEntry(j, sum.value());
+        }
+
+        FieldMatrix<BigFraction> cons = block.getConstraints();
+        int rows = cons.getRowDimension();
+        HashMap<Integer, String> x = new HashMap<Integer, String>();
+        String[] names = block.getNonBasic();
+        for (int j = 0; j < names.length; j++) x.put(j, names[j]);
+        return new LP(cons.getSubMatrix(0, rows-1, 0, cols.length-1),
+                      block.getConsValues(), w, x).engine(block.getEngine());
+    }
+
+
+
+    /* sigma_k, the dual of the convexity constraint of block k in y. */
+    private BigFraction sigma(BigFraction[] y, int k) {
+        BigFraction up = y[link.length + 2*k];
+        BigFraction down = y[link.length + 2*k + 1];
+        if (up == null || down == null) return BigFraction.ZERO;
+        return Rationals.subtract(up, down);
+    }
+
+
+
+    /* Add a point or ray v of block k as a column of the master. */
+    private void add(int k, BigFraction[] v, boolean ray) {
+        int[] cols = blocks.getColumns(k);
+        BigFraction[] part = new BigFraction[link.length];
+        for (int l = 0; l < link.length; l++) {
+            RationalSum sum = new RationalSum();
+            for (int j = 0; j < cols.length; j++) {
+                sum.addProduct(A.getEntry(link[l], cols[j]), v[j]);
+            }
+            part[l] = sum.value();
+        }
+        RationalSum cost = new RationalSum();
+        for (int j = 0; j < cols.length; j++) {
+            cost.addProduct(c.getEntry(cols[j]), v[j]);
+        }
+
+        owner.add(k);
+        vectors.add(v.clone());
+        rays.add(ray);
+        parts.add(part);
+        costs.add(cost.value());
+    }
+
+
+
+    /* The restricted master problem of the columns found so far. */
+    private LP master() {
+        int count = blocks.size();
+        int rows = link.length + 2*count;
+        int cols = owner.size();
+
+        BigFraction[][] M = new BigFraction[rows][cols];
+        for (BigFraction[] row : M) Arrays.fill(row, BigFraction.ZERO);
+        BigFraction[] b = new BigFraction[rows];
+        BigFraction[] cost = new BigFraction[cols];
+        for (int l = 0; l < link.length; l++) b[l] = A.getEntry(link[l],
+                A.getColumnDimension() - 1);
+        for (int k = 0; k < count; k++) {
+            b[link.length + 2*k] = BigFraction.ONE;
+            b[link.length + 2*k + 1] = BigFraction.MINUS_ONE;
+        }
+
+        HashMap<Integer, String> x = new HashMap<Integer, String>();
+        for (int j = 0; j < cols; j++) {
+            BigFraction[] part = parts.get(j);
+            for (int l = 0; l < link.length; l++) M[l][j] = part[l];
+            if (!rays.get(j)) {
+                int k = owner.get(j);
+                M[link.length + 2*k][j] = BigFraction.ONE;
+                M[link.length + 2*k + 1][j] = BigFraction.MINUS_ONE;
+            }
+            cost[j] = costs.get(j);
+            x.put(j, "v" + (j+1));
+        }
+        return new LP(new Array2DRowFieldMatrix<BigFraction>(M, false),
+                      new ArrayFieldVector<BigFraction>(b, false),
+                      new ArrayFieldVector<BigFraction>(cost, false), x);
+    }
+
+
+
+    /* The point of the program combining the columns by weights v. */
+    private BigFraction[] combine(BigFraction[] v) {
+        int n = lp.getNoNonBasic();
+        RationalSum[] sums = new RationalSum[n];
+        for (int j = 0; j < n; j++) sums[j] = new RationalSum();
+        for (int p = 0; p < v.length; p++) {
+            if (Rationals.isZero(v[p])) continue;
+            int[] cols = blocks.getColumns(owner.get(p));
+            BigFraction[] vec = vectors.get(p);
+            for (int j = 0; j < cols.length; j++) {
+                sums[cols[j]].addProduct(v[p], vec[j]);
+            }
+        }
+        BigFraction[] x = new BigFraction[n];
+        for (int j = 0; j < n; j++) x[j] = sums[j].value();
+        return x;
+    }
+
+
+
+    /*
+     * Multipliers for the whole program: y of the master on the linking
+     * constraints and the duals of the last pricing on the blocks.
+     */
+    private BigFraction[] multipliers(BigFraction[] y) {
+        BigFraction[] all = new BigFraction[lp.getNoBasic()];
+        for (int l = 0; l < link.length; l++) all[link[l]] = y[l];
+        for (int k = 0; k < blocks.size(); k++) {
+            int[] rows = blocks.getRows(k);
+            for (int i = 0; i < rows.length; i++) all[rows[i]] = duals[k][i];
+        }
+        return all;
+    }
+
+
+
+    private BigFraction[] optimal(LP master, BigFraction[] y) {
+        BigFraction[] x = combine(master.point());
+        objVal = master.objVal();
+        certificate = Certificate.optimal(x, multipliers(y));
+        return x;
+    }
+
+
+
+    /* The master has no feasible point, nor has any block a way out. */
+    private UnboundedException infeasible(BigFraction[] y) {
+        certificate = Certificate.infeasible(multipliers(y));
+        return new UnboundedException("Program is infeasible", certificate);
+    }
+
+
+
+    /* Block k is infeasible. Its Farkas ray is zero outside the block. */
+    private UnboundedException blockInfeasible(int k, BigFraction[] yk) {
+        BigFraction[] y = new BigFraction[lp.getNoBasic()];
+        Arrays.fill(y, BigFraction.ZERO);
+        int[] rows = blocks.getRows(k);
+        for (int i = 0; i < rows.length; i++) y[rows[i]] = yk[i];
+        certificate = Certificate.infeasible(y);
+        return new UnboundedException("Program is infeasible", certificate);
+    }
+
+
+
+    /* The master is unbounded along a ray, which only uses rays of blocks. */
+    private UnboundedException unbounded(Certificate cert) {
+        certificate = Certificate.unbounded(combine(cert.getPoint()),
+                                            combine(cert.getRay()));
+        return new UnboundedException("Program is unbounded", certificate);
+    }
+
+
+
+    /**
+     * @return
+     *         The blocks of the program.
+     */
+    public Blocks getBlocks() {
+        return blocks;
+    }
+
+
+
+    /**
+     * @return
+     *         The optimal objective value found by the last solve, or null.
+     */
+    public BigFraction getObjVal() {
+        return objVal;
+    }
+
+
+
+    /**
+     * @return
+     *         The certificate of the outcome of the last solve, or null.
+     */
+    public Certificate getCertificate() {
+        return certificate;
+    }
+
+
+
+    /**
+     * @return
+     *         The number of restricted master problems solved by the last
+     *         solve.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+
+
+    /**
+     * @return
+     *         The number of columns of the last restricted master problem.
+     */
+    public int getColumns() {
+        return owner.size();
+    }
+
+
+
+    /**
+     * @return
+     *         Nanoseconds spent solving restricted master problems by the last
+     *         solve.
+     */
+    public long getMasterTime() {
+        return masterTime;
+    }
+
+
+
+    /**
+     * @return
+     *         Nanoseconds spent solving the subproblems of each block by the
+     *         last solve, over all iterations.
+     */
+    public long[] getBlockTimes() {
+        return blockTime.clone();
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.apache.commons.math3.linear.Array2DRowFieldMatrix;
+import org.apache.commons.math3.linear.ArrayFieldVector;
+import org.apache.commons.math3.linear.FieldMatrix;
+import org.apache.commons.math3.linear.FieldVector;
+import org.apache.commons.math3.linear.SingularMatrixException;
+
+/**
+ * Exact solver for linear systems {@code A X = R} with rational entries.
+ * <p>
+ * Instead of eliminating over the rationals, where the size of the numbers
+ * may grow quickly, the system is scaled to integers and solved modulo a
+ * single word-sized prime p. The solution is then lifted p-adically (Dixon
+ * lifting) until its precision is large enough for rational reconstruction
+ * to recover the exact solution. All arithmetic during elimination is done
+ * on {@code long}s.
+ * </p>
+ *
+ * @author  Andreas Halle
+ * @see     model.LP
+ */
+public final class Dixon {
+    /* Don't allow instances of this class. */
+    private Dixon() {}
+
+    /* Number of primes to try before the matrix is considered singular. */
+    private static final int TRIES = 4;
+
+    /* Largest prime below 2^31. Products of residues fit in a long. */
+    private static final long FIRST_PRIME = 2147483647L;
+
+
+
+    /**
+     * Solve the linear system {@code A X = R} exactly.
+     *
+     * @param  A
+     *         A square {@code FieldMatrix}.
+     * @param  R
+     *         A {@code FieldMatrix} with as many rows as {@code A}.
+     * @return
+     *         The solution {@code X}.
+     * @throws SingularMatrixException
+     *         If {@code A} is singular.
+     */
+    public static FieldMatrix<BigFraction> solve(FieldMatrix<BigFraction> A,
+                                                 FieldMatrix<BigFraction> R) {
+        int m = A.getRowDimension();
+        int k = R.getColumnDimension();
+
+        String e = String.format("Illegal operation: Cannot solve a system with"
+                               + " a %d x %d matrix and a %d x %d right hand"
+                               + " side.", m, A.getColumnDimension(),
+                                 R.getRowDimension(), k);
+        if (m != A.getColumnDimension() || m != R.getRowDimension()) {
+            throw new IllegalArgumentException(e);
+        }
+        if (m == 0 || k == 0) return R.copy();
+
+        /*
+         * Take the numerators of the columns of A and R over their
+         * denominators da and dr, so that A X = R becomes An Y = Rn with
+         * X = diag(da) Y diag(dr)^-1. Then scale each row of [An | Rn] to
+         * integers.
+         */
+        BigInteger[] da = new BigInteger[m];
+        BigInteger[] dr = new BigInteger[k];
+        BigFraction[][] An = numerators(A, da);
+        BigFraction[][] Rn = numerators(R, dr);
+        BigInteger[][] Ai = new BigInteger[m][m];
+        BigInteger[][] Ri = new BigInteger[m][k];
+        for (int i = 0; i < m; i++) {
+            BigInteger lcm = BigInteger.ONE;
+            for (int j = 0; j < m; j++) lcm = lcm(lcm, An[i][j]);
+            for (int j = 0; j < k; j++) lcm = lcm(lcm, Rn[i][j]);
+
+            for (int j = 0; j < m; j++) Ai[i][j] = scale(An[i][j], lcm);
+            for (int j = 0; j < k; j++) Ri[i][j] = scale(Rn[i][j], lcm);
+        }
+
+        /* Find a prime p such that A is invertible modulo p. */
+        long p = FIRST_PRIME;
+        long[][] C = null;
+        for (int t = 0; t < TRIES && C == null; t++) {
+            if (t > 0) p = previousPrime(p);
+            C = inverse(Ai, p);
+        }
+        if (C == null) throw new SingularMatrixException();
+
+        int steps = steps(Ai, Ri, p);
+        BigInteger[][] X = lift(Ai, Ri, C, p, steps);
+
+        /* Reconstruct the rational solution from its p-adic expansion. */
+        BigInteger M = BigInteger.valueOf(p).pow(steps);
+        BigInteger bound = sqrt(M.shiftRight(1));
+        BigFraction[][] data = new BigFraction[m][k];
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < k; j++) {
+                data[i][j] = reconstruct(X[i][j], M, bound);
+                if (data[i][j] == null) throw new SingularMatrixException();
+                if (!da[i].equals(dr[j])) {
+                    data[i][j] = Rationals.multiply(data[i][j],
+                                                    new BigFraction(da[i],
+                                                                    dr[j]));
+                }
+            }
+        }
+        return new Array2DRowFieldMatrix<BigFraction>(data, false);
+    }
+
+
+
+    /**
+     * Solve the linear system {@code A x = r} exactly.
+     *
+     * @param  A
+     *         A square {@code FieldMatrix}.
+     * @param  r
+     *         A {@code FieldVector} with as many entries as {@code A} has
+     *         rows.
+     * @return
+     *         The solution {@code x}.
+     * @throws SingularMatrixException
+     *         If {@code A} is singular.
+     */
+    public static FieldVector<BigFraction> solve(FieldMatrix<BigFraction> A,
+                                                 FieldVector<BigFraction> r) {
+        FieldMatrix<BigFraction> R = new Array2DRowFieldMatrix<BigFraction>(
+                BigFraction.ONE.getField(), r.getDimension(), 1);
+        R.setColumnVector(0, r);
+        return new ArrayFieldVector<BigFraction>(solve(A, R).getColumn(0),
+                                                 false);
+    }
+
+
+
+    /*
+     * Compute the p-adic expansion x_0 + x_1 p + ... + x_(s-1) p^(s-1) of the
+     * solution, keeping the residual R - A X exactly divisible by p^i.
+     */
+    private static BigInteger[][] lift(BigInteger[][] A, BigInteger[][] R,
+                                       long[][] C, long p, int steps) {
+        int m = A.length;
+        int k = R[0].length;
+        BigInteger bp = BigInteger.valueOf(p);
+
+        BigInteger[][] res = new BigInteger[m][];
+        for (int i = 0; i < m; i++) res[i] = R[i].clone();
+
+        BigInteger[][] X = new BigInteger[m][k];
+        for (BigInteger[] row : X) Arrays.fill(row, BigInteger.ZERO);
+
+        long[] rm = new long[m];
+        long[] xi = new long[m];
+        BigInteger pk = BigInteger.ONE;
+
+        for (int s = 0; s < steps; s++) {
+            for (int j = 0; j < k; j++) {
+                for (int i = 0; i < m; i++) rm[i] = mod(res[i][j], p);
+
+                /* x_s = C r (mod p) */
+                for (int i = 0; i < m; i++) {
+                    long sum = 0;
+                    for (int l = 0; l < m; l++) {
+                        sum = (sum + C[i][l] * rm[l]) % p;
+                    }
+                    xi[i] = sum;
+                }
+
+                /* res = (res - A x_s) / p */
+                for (int i = 0; i < m; i++) {
+                    BigInteger sum = BigInteger.ZERO;
+                    for (int l = 0; l < m; l++) {
+                        if (xi[l] != 0 && A[i][l].signum() != 0) {
+                            sum = sum.add(A[i][l].multiply(
+                                    BigInteger.valueOf(xi[l])));
+                        }
+                    }
+                    res[i][j] = res[i][j].subtract(sum).divide(bp);
+                    if (xi[i] != 0) {
+                        X[i][j] = X[i][j].add(
+                                pk.multiply(BigInteger.valueOf(xi[i])));
+                    }
+                }
+            }
+            pk = pk.multiply(bp);
+        }
+        return X;
+    }
+
+
+
+    /*
+     * Number of lifting steps needed so that p^steps > 2 N D, N and D being
+     * bounds on the numerators and denominators of the solution. By Cramer's
+     * rule both are bounded by the Hadamard bound of [A | R].
+     */
+    private static int steps(BigInteger[][] A, BigInteger[][] R, long p) {
+        long bits = 0;
+        for (int i = 0; i < A.length; i++) {
+            BigInteger norm = BigInteger.ZERO;
+            for (BigInteger a : A[i]) norm = norm.add(a.multiply(a));
+
+            BigInteger max = BigInteger.ZERO;
+            for (BigInteger r : R[i]) {
+                BigInteger sq = r.multiply(r);
+                if (sq.compareTo(max) > 0) max = sq;
+            }
+            bits += (norm.add(max).bitLength() + 1) / 2;
+        }
+        int pbits = 63 - Long.numberOfLeadingZeros(p);
+        return (int) ((2 * bits + 2) / pbits) + 1;
+    }
+
+
+
+    /*
+     * Return the inverse of A modulo p using Gauss-Jordan elimination, or
+     * null if A is singular modulo p.
+     */
+    private static long[][] inverse(BigInteger[][] A, long p) {
+        int m = A.length;
+        long[][] a = reduce(A, p);
+        long[][] inv = new long[m][m];
+        for (int i = 0; i < m; i++) inv[i][i] = 1;
+
+        for (int col = 0; col < m; col++) {
+            int piv = col;
+            while (piv < m && a[piv][col] == 0) piv++;
+            if (piv == m) return null;
+
+            long[] tmp = a[piv]; a[piv] = a[col]; a[col] = tmp;
+            tmp = inv[piv]; inv[piv] = inv[col]; inv[col] = tmp;
+
+            long f = modInverse(a[col][col], p);
+            for (int j = 0; j < m; j++) {
+                a[col][j] = a[col][j] * f % p;
+                inv[col][j] = inv[col][j] * f % p;
+            }
+
+            for (int i = 0; i < m; i++) {
+                long g = a[i][col];
+                if (i == col || g == 0) continue;
+                for (int j = 0; j < m; j++) {
+                    a[i][j] = (a[i][j] - g * a[col][j] % p + p) % p;
+                    inv[i][j] = (inv[i][j] - g * inv[col][j] % p + p) % p;
+                }
+            }
+        }
+        return inv;
+    }
+
+
+
+    /*
+     * Return the fraction n/d with |n|, d <= bound such that n = d x (mod M),
+     * or null if no such fraction exists.
+     */
+    private static BigFraction reconstruct(BigInteger x, BigInteger M,
+                                           BigInteger bound) {
+        BigInteger r0 = M;
+        BigInteger r1 = x.mod(M);
+        BigInteger t0 = BigInteger.ZERO;
+        BigInteger t1 = BigInteger.ONE;
+
+        while (r1.compareTo(bound) > 0) {
+            BigInteger[] qr = r0.divideAndRemainder(r1);
+            r0 = r1;
+            r1 = qr[1];
+            BigInteger t = t0.subtract(qr[0].multiply(t1));
+            t0 = t1;
+            t1 = t;
+        }
+
+        if (t1.abs().compareTo(bound) > 0) return null;
+        if (!r1.gcd(t1).equals(BigInteger.ONE)) return null;
+        return new BigFraction(r1, t1);
+    }
+
+
+
+    private static long[][] reduce(BigInteger[][] A, long p) {
+        long[][] a = new long[A.length][];
+        for (int i = 0; i < A.length; i++) {
+            a[i] = new long[A[i].length];
+            for (int j = 0; j < A[i].length; j++) a[i][j] = mod(A[i][j], p);
+        }
+        return a;
+    }
+
+
+
+    private static long mod(BigInteger a, long p) {
+        if (a.bitLength() < 63) {
+            long r = a.longValue() % p;
+            return r < 0 ? r + p : r;
+        }
+        return a.mod(BigInteger.valueOf(p)).longValue();
+    }
+
+
+
+    private static long modInverse(long a, long p) {
+        return BigInteger.valueOf(a).modInverse(BigInteger.valueOf(p))
+                .longValue();
+    }
+
+
+
+    private static long previousPrime(long p) {
+        BigInteger q = BigInteger.valueOf(p - 2);
+        while (!q.isProbablePrime(40)) q = q.subtract(BigInteger.valueOf(2));
+        return q.longValue();
+    }
+
+
+
+    /*
+     * Return the entries of M over the denominators of their columns, which
+     * are stored in den. Only a CompactMatrix has denominators other than
+     * one.
+     */
+    private static BigFraction[][] numerators(FieldMatrix<BigFraction> M,
+                                              BigInteger[] den) {
+        if (!(M instanceof CompactMatrix)) {
+            Arrays.fill(den, BigInteger.ONE);
+            return M.getData();
+        }
+        CompactMatrix C = (CompactMatrix) M;
+        BigFraction[][] num = new BigFraction[C.getRowDimension()][den.length];
+        for (int j = 0; j < den.length; j++) {
+            den[j] = C.getDenominator(j);
+            for (int i = 0; i < num.length; i++) {
+                num[i][j] = C.getNumerator(i, j);
+            }
+        }
+        return num;
+    }
+
+
+
+    private static BigInteger lcm(BigInteger l, BigFraction bf) {
+        BigInteger d = bf.getDenominator();
+        if (d.equals(BigInteger.ONE)) return l;
+        return l.divide(l.gcd(d)).multiply(d);
+    }
+
+
+
+    private static BigInteger scale(BigFraction bf, BigInteger lcm) {
+        return bf.getNumerator().multiply(lcm.divide(bf.getDenominator()));
+    }
+
+
+
+    /* Integer square root, rounded down. */
+    private static BigInteger sqrt(BigInteger n) {
+        if (n.signum() <= 0) return BigInteger.ZERO;
+        BigInteger x = BigInteger.ONE.shiftLeft(n.bitLength() / 2 + 1);
+        while (true) {
+            BigInteger y = x.add(n.divide(x)).shiftRight(1);
+            if (y.compareTo(x) >= 0) return x;
+            x = y;
+        }
+    }
+}
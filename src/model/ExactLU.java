@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.fraction.BigFraction;
+import org.apache.commons.math3.linear.Array2DRowFieldMatrix;
+import org.apache.commons.math3.linear.ArrayFieldVector;
+import org.apache.commons.math3.linear.FieldDecompositionSolver;
+import org.apache.commons.math3.linear.FieldMatrix;
+import org.apache.commons.math3.linear.FieldVector;
+import org.apache.commons.math3.linear.NonSquareMatrixException;
+import org.apache.commons.math3.linear.SingularMatrixException;
+
+/**
+ * LU decomposition of a square matrix of {@code BigFraction}s, computed in
+ * parallel.
+ * <p>
+ * This is a drop-in replacement for commons-math's
+ * {@code FieldLUDecomposition<BigFraction>} with the same methods, pivoting
+ * and exceptions: the first non-zero entry of a column is chosen as pivot,
+ * PA = LU, and solving with a singular matrix throws a
+ * {@code SingularMatrixException}. The elimination below each pivot and the
+ * solution of each column of a right hand side are split into blocks that
+ * run on the pool of {@link Parallel}.
+ * </p>
+ *
+ * @author  Andreas Halle
+ * @see     model.Parallel
+ */
+public class ExactLU {
+    private final int m;
+    private final BigFraction[][] lu; // L below the diagonal, U on and above.
+    private final int[] pivot;
+    private boolean even;
+    private boolean singular;
+
+
+
+    /**
+     * Compute the LU decomposition of the given matrix.
+     *
+     * @param  A
+     *         A square {@code FieldMatrix}.
+     * @throws NonSquareMatrixException
+     *         If {@code A} is not square.
+     */
+    public ExactLU(FieldMatrix<BigFraction> A) {
+        if (!A.isSquare()) {
+            throw new NonSquareMatrixException(A.getRowDimension(),
+                                               A.getColumnDimension());
+        }
+        m = A.getRowDimension();
+        lu = A.getData();
+        pivot = new int[m];
+        for (int i = 0; i < m; i++) pivot[i] = i;
+        even = true;
+        singular = false;
+
+        for (int k = 0; k < m; k++) {
+            int p = k;
+            while (p < m && Rationals.isZero(lu[p][k])) p++;
+            if (p == m) {
+                singular = true;
+                return;
+            }
+            if (p != k) {
+                BigFraction[] tmp = lu[p];
+                lu[p] = lu[k];
+                lu[k] = tmp;
+                int t = pivot[p];
+                pivot[p] = pivot[k];
+                pivot[k] = t;
+                even = !even;
+            }
+            eliminate(k);
+        }
+    }
+
+
+
+    /* Eliminate column k below the diagonal, in parallel over the rows. */
+    private void eliminate(final int k) {
+        final BigFraction[] row = lu[k];
+        final BigFraction p = row[k];
+
+        Parallel.rows(m - k - 1, m - k, new Parallel.Rows() {
+            public void run(int lo, int hi) {
+                for (int i = k + 1 + lo; i < k + 1 + hi; i++) {
+                    BigFraction[] ri = lu[i];
+                    if (Rationals.isZero(ri[k])) continue;
+
+                    BigFraction f = Rationals.divide(ri[k], p);
+                    ri[k] = f;
+                    for (int j = k + 1; j < m; j++) {
+                        ri[j] = Rationals.subtractProduct(ri[j], f, row[j]);
+                    }
+                }
+            }
+        });
+    }
+
+
+
+    /**
+     * @return
+     *         The lower triangular matrix L with a unit diagonal, or null if
+     *         the matrix is singular.
+     */
+    public FieldMatrix<BigFraction> getL() {
+        if (singular) return null;
+        BigFraction[][] L = new BigFraction[m][m];
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < m; j++) {
+                if (j < i) L[i][j] = lu[i][j];
+                else L[i][j] = (i == j) ? BigFraction.ONE : BigFraction.ZERO;
+            }
+        }
+        return new Array2DRowFieldMatrix<BigFraction>(L, false);
+    }
+
+
+
+    /**
+     * @return
+     *         The upper triangular matrix U, or null if the matrix is
+     *         singular.
+     */
+    public FieldMatrix<BigFraction> getU() {
+        if (singular) return null;
+        BigFraction[][] U = new BigFraction[m][m];
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < m; j++) {
+                U[i][j] = (j >= i) ? lu[i][j] : BigFraction.ZERO;
+            }
+        }
+        return new Array2DRowFieldMatrix<BigFraction>(U, false);
+    }
+
+
+
+    /**
+     * @return
+     *         The permutation matrix P such that PA = LU, or null if the
+     *         matrix is singular.
+     */
+    public FieldMatrix<BigFraction> getP() {
+        if (singular) return null;
+        BigFraction[][] P = new BigFraction[m][m];
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < m; j++) {
+                P[i][j] = (pivot[i] == j) ? BigFraction.ONE : BigFraction.ZERO;
+            }
+        }
+        return new Array2DRowFieldMatrix<BigFraction>(P, false);
+    }
+
+
+
+    /**
+     * @return
+     *         The pivot permutation vector.
+     */
+    public int[] getPivot() {
+        return pivot.clone();
+    }
+
+
+
+    /**
+     * @return
+     *         The determinant of the matrix.
+     */
+    public BigFraction getDeterminant() {
+        if (singular) return BigFraction.ZERO;
+        BigFraction det = even ? BigFraction.ONE : BigFraction.MINUS_ONE;
+        for (int i = 0; i < m; i++) det = Rationals.multiply(det, lu[i][i]);
+        return det;
+    }
+
+
+
+    /**
+     * @return
+     *         A solver for linear systems with the decomposed matrix.
+     */
+    public FieldDecompositionSolver<BigFraction> getSolver() {
+        return new Solver();
+    }
+
+
+
+    private class Solver implements FieldDecompositionSolver<BigFraction> {
+        public boolean isNonSingular() {
+            return !singular;
+        }
+
+        public FieldVector<BigFraction> solve(FieldVector<BigFraction> b) {
+            if (b.getDimension() != m) {
+                throw new DimensionMismatchException(b.getDimension(), m);
+            }
+            if (singular) throw new SingularMatrixException();
+            return new ArrayFieldVector<BigFraction>(
+                    BigFraction.ONE.getField(), column(b.toArray()), false);
+        }
+
+        public FieldMatrix<BigFraction> solve(FieldMatrix<BigFraction> B) {
+            if (B.getRowDimension() != m) {
+                throw new DimensionMismatchException(B.getRowDimension(), m);
+            }
+            if (singular) throw new SingularMatrixException();
+
+            final int k = B.getColumnDimension();
+            final BigFraction[][] Bt = B.transpose().getData();
+            final BigFraction[][] X = new BigFraction[m][k];
+
+            /* Each column of the right hand side is solved independently. */
+            Parallel.rows(k, m * m, new Parallel.Rows() {
+                public void run(int lo, int hi) {
+                    for (int j = lo; j < hi; j++) {
+                        BigFraction[] x = column(Bt[j]);
+                        for (int i = 0; i < m; i++) X[i][j] = x[i];
+                    }
+                }
+            });
+            return new Array2DRowFieldMatrix<BigFraction>(
+                    BigFraction.ONE.getField(), X, false);
+        }
+
+        public FieldMatrix<BigFraction> getInverse() {
+            BigFraction[][] I = new BigFraction[m][m];
+            for (int i = 0; i < m; i++) {
+                for (int j = 0; j < m; j++) {
+                    I[i][j] = (i == j) ? BigFraction.ONE : BigFraction.ZERO;
+                }
+            }
+            return solve(new Array2DRowFieldMatrix<BigFraction>(
+                    BigFraction.ONE.getField(), I, false));
+        }
+    }
+
+
+
+    /* Solve LU x = P b by forward and back substitution. */
+    private BigFraction[] column(BigFraction[] b) {
+        BigFraction[] x = new BigFraction[m];
+        for (int i = 0; i < m; i++) {
+            RationalSum sum = new RationalSum().add(b[pivot[i]]);
+            for (int j = 0; j < i; j++) {
+                sum.subtractProduct(lu[i][j], x[j]);
+            }
+            x[i] = sum.value();
+        }
+        for (int i = m - 1; i >= 0; i--) {
+            RationalSum sum = new RationalSum().add(x[i]);
+            for (int j = i + 1; j < m; j++) {
+                sum.subtractProduct(lu[i][j], x[j]);
+            }
+            x[i] = Rationals.divide(sum.value(), lu[i][i]);
+        }
+        return x;
+    }
+}
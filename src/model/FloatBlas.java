@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+/**
+ * Blocked kernels on dense matrices of doubles: the matrix product
+ * C -= A B and triangular solves, as used by {@code FloatLU}.
+ * <p>
+ * A matrix is given by an array holding it row-major, the offset of its
+ * first entry and the distance between its rows. Products are computed a
+ * tile of B at a time, so that the tile stays in cache while every row of a
+ * block of rows is updated with it. The innermost loops run along rows with
+ * unit stride, as in {@code FloatKernels}. Products are split into blocks of
+ * rows and triangular solves into blocks of columns of the right hand side,
+ * which are done in parallel by {@link Parallel}.
+ * </p>
+ *
+ * @author  Andreas Halle
+ * @see     model.FloatLU
+ */
+public final class FloatBlas {
+    /* Don't allow instances of this class. */
+    private FloatBlas() {}
+
+    /* Tile sizes, in rows and columns of B. */
+    private static final int KB = 128;
+    private static final int NB = 256;
+
+
+
+    /**
+     * C -= A B, where A is m x k, B is k x n and C is m x n. C must not
+     * overlap A or B.
+     */
+    public static void gemm(final int m, final int n, final int k,
+                            final double[] a, final int ao, final int lda,
+                            final double[] b, final int bo, final int ldb,
+                            final double[] c, final int co, final int ldc) {
+        Parallel.rows(m, cost(n, k), new Parallel.Rows() {
+            public void run(int lo, int hi) {
+                block(lo, hi, 0, n, k, a, ao, lda, b, bo, ldb, c, co, ldc);
+            }
+        });
+    }
+
+
+
+    /**
+     * Solve L X = B in place of B, where L is m x m unit lower triangular
+     * and B is m x n. The entries of L on and above the diagonal are not
+     * read.
+     */
+    public static void lower(final int m, final int n,
+                             final double[] l, final int lo, final int ldl,
+                             final double[] b, final int bo, final int ldb) {
+        /* The columns of B are independent, so blocks of them are split. */
+        Parallel.rows(n, cost(m, m), new Parallel.Rows() {
+            public void run(int jlo, int jhi) {
+                for (int r0 = 0; r0 < m; r0 += KB) {
+                    int r1 = Math.min(m, r0 + KB);
+
+                    /* Subtract the rows solved in earlier blocks... */
+                    block(r0, r1, jlo, jhi, r0, l, lo, ldl, b, bo, ldb,
+                          b, bo, ldb);
+
+                    /* ...then solve the diagonal block. */
+                    for (int i = r0 + 1; i < r1; i++) {
+                        for (int p = r0; p < i; p++) {
+                            double f = l[lo + i*ldl + p];
+                            if (f == 0) continue;
+                            FloatKernels.axpy(f, b, bo + p*ldb + jlo,
+                                              b, bo + i*ldb + jlo, jhi - jlo);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+
+
+    /**
+     * Solve U X = B in place of B, where U is m x m upper triangular and B is
+     * m x n. The entries of U below the diagonal are not read.
+     */
+    public static void upper(final int m, final int n,
+                             final double[] u, final int uo, final int ldu,
+                             final double[] b, final int bo, final int ldb) {
+        Parallel.rows(n, cost(m, m), new Parallel.Rows() {
+            public void run(int jlo, int jhi) {
+                for (int r1 = m; r1 > 0; r1 -= KB) {
+                    int r0 = Math.max(0, r1 - KB);
+
+                    block(r0, r1, jlo, jhi, m - r1, u, uo + r1, ldu,
+                          b, bo + r1*ldb, ldb, b, bo, ldb);
+
+                    for (int i = r1 - 1; i >= r0; i--) {
+                        for (int p = i + 1; p < r1; p++) {
+                            double f = u[uo + i*ldu + p];
+                            if (f == 0) continue;
+                            FloatKernels.axpy(f, b, bo + p*ldb + jlo,
+                                              b, bo + i*ldb + jlo, jhi - jlo);
+                        }
+                        FloatKernels.scale(1 / u[uo + i*ldu + i], b,
+                                           bo + i*ldb + jlo, jhi - jlo);
+                    }
+                }
+            }
+        });
+    }
+
+
+
+    /*
+     * C[i][j] -= sum over p of A[i][p] B[p][j], for lo <= i < hi,
+     * jlo <= j < jhi and 0 <= p < k, one tile of B at a time.
+     */
+    private static void block(int lo, int hi, int jlo, int jhi, int k,
+                              double[] a, int ao, int lda,
+                              double[] b, int bo, int ldb,
+                              double[] c, int co, int ldc) {
+        for (int pp = 0; pp < k; pp += KB) {
+            int pe = Math.min(k, pp + KB);
+            for (int jj = jlo; jj < jhi; jj += NB) {
+                int len = Math.min(jhi, jj + NB) - jj;
+                for (int i = lo; i < hi; i++) {
+                    int ai = ao + i*lda;
+                    int ci = co + i*ldc + jj;
+                    for (int p = pp; p < pe; p++) {
+                        double f = a[ai + p];
+                        if (f == 0) continue;
+                        FloatKernels.axpy(f, b, bo + p*ldb + jj, c, ci, len);
+                    }
+                }
+            }
+        }
+    }
+
+
+
+    /* The work per row or column, capped to what Parallel.rows takes. */
+    private static int cost(int n, int k) {
+        return (int) Math.min(Integer.MAX_VALUE, (long) n * k);
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * Loops over arrays of doubles used by {@code FloatLP}.
+ * <p>
+ * The ratio tests and row updates over unit-stride ranges of arrays are run
+ * by {@code VectorKernels}, built on the incubating vector API, when the JVM
+ * is started with {@code --add-modules jdk.incubator.vector}. The system
+ * property {@code pplex.vector=false} turns it off. Otherwise, for strided
+ * loops, for buffers, and for pricing, which measured faster as one scalar
+ * pass, the scalar loops here are used. They are simple counted loops,
+ * which is the shape HotSpot's superword optimization compiles to SIMD
+ * instructions where it can. Unrolling them by hand measured slower, as it
+ * hides the shape from the compiler. Run {@code ant bench} to compare.
+ * </p>
+ * <p>
+ * The vector kernels return the same indices as the scalar ones, and
+ * update rows with the same roundings.
+ * </p>
+ * <p>
+ * Dictionaries stored outside the heap are updated with the pivot row on the
+ * heap and the other rows in a {@code DoubleBuffer}.
+ * </p>
+ *
+ * @author  Andreas Halle
+ * @see     model.FloatLP
+ */
+public final class FloatKernels {
+    /* Don't allow instances of this class. */
+    private FloatKernels() {}
+
+    /** Returned by {@link #ratio} if no value bounds the step. */
+    public static final int UNBOUNDED = -2;
+
+    /* The kernels for unit strides, or null to use the scalar loops. */
+    private static final Unit UNIT = unit();
+
+
+
+    /*
+     * The kernels over unit-stride ranges that VectorKernels implements.
+     * See the static methods of the same names.
+     */
+    interface Unit {
+        int ratio(double[] a, int so, double sign, int co, int len,
+                  double eps);
+        int harris(double[] a, int so, double sign, int co, int len,
+                   double tol, double delta);
+        int tiny(double[] a, int so, double sign, int len, double tol);
+        void axpy(double f, double[] x, int xo, double[] y, int yo, int len);
+        void scale(double f, double[] x, int xo, int len);
+    }
+
+
+
+    /*
+     * Load VectorKernels if it was built and the vector API is present.
+     * It is compiled apart from the rest, so it is only known by name.
+     */
+    private static Unit unit() {
+        String use = System.getProperty("pplex.vector", "true");
+        if (!Boolean.parseBoolean(use)) return null;
+        try {
+            Class<?> k = Class.forName("model.VectorKernels");
+            return (Unit) k.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+
+
+    /**
+     * @return
+     *         {@code true} if unit-stride loops are run by the vector API.
+     */
+    public static boolean isVectorized() {
+        return UNIT != null;
+    }
+
+
+
+    /**
+     * Return the index i of the smallest of the values
+     * a[off + i*step], 0 &lt;= i &lt; len, that are less than bound. If
+     * several values are the smallest, the first is returned.
+     *
+     * @param  a
+     *         An array.
+     * @param  off
+     *         Offset of the first value.
+     * @param  step
+     *         Distance between values.
+     * @param  len
+     *         Number of values.
+     * @param  bound
+     *         Only values below this are considered.
+     * @return
+     *         An index, or -1 if no value is less than bound.
+     */
+    public static int argmin(double[] a, int off, int step, int len,
+                             double bound) {
+        double min = bound;
+        int index = -1;
+        for (int i = 0, k = off; i < len; i++, k += step) {
+            if (a[k] < min) {
+                min = a[k];
+                index = i;
+            }
+        }
+        return index;
+    }
+
+
+
+    /**
+     * The ratio test of {@code LP}, on a step direction sign * a[so + i*ss]
+     * and bounds a[co + i*cs], 0 &lt;= i &lt; len, in a single pass. Values
+     * with an absolute value of at most eps are considered zero.
+     * <p>
+     * The first ratio seen becomes the max, and a zero bound with a positive
+     * step is returned at once. The latter never happens if the step is
+     * unbounded, so one pass gives the result of {@code LP}'s two.
+     * </p>
+     *
+     * @return
+     *         The index of the most bounding value, or {@code UNBOUNDED}.
+     */
+    public static int ratio(double[] a, int so, int ss, double sign, int co,
+                            int cs, int len, double eps) {
+        if (UNIT != null && ss == 1 && cs == 1) {
+            return UNIT.ratio(a, so, sign, co, len, eps);
+        }
+        boolean unbounded = true;
+        int index = -1;
+        double max = 0;
+
+        for (int i = 0, ks = so, kc = co; i < len; i++, ks += ss, kc += cs) {
+            double num = sign * a[ks];
+            double check = a[kc];
+            if (num > eps) unbounded = false;
+
+            if (Math.abs(check) > eps) {
+                double val = num / check;
+                if (index == -1 || val > max) {
+                    max = val;
+                    index = i;
+                }
+            } else {
+                if (num > eps) return i;
+            }
+        }
+        return unbounded ? UNBOUNDED : index;
+    }
+
+
+
+    /**
+     * Harris' ratio test on a step direction sign * a[so + i*ss] and bounds
+     * a[co + i*cs], 0 &lt;= i &lt; len, in two passes. Values of the
+     * direction of at most tol are too small to pivot on and are skipped.
+     * <p>
+     * The first pass finds the longest step that keeps every bound above
+     * -delta. The second pass returns, among the values that bound a step
+     * no longer than that, the one with the largest direction. If several
+     * are the largest, the first is returned.
+     * </p>
+     *
+     * @return
+     *         The index of the chosen value, or {@code UNBOUNDED}.
+     */
+    public static int harris(double[] a, int so, int ss, double sign, int co,
+                             int cs, int len, double tol, double delta) {
+        if (UNIT != null && ss == 1 && cs == 1) {
+            return UNIT.harris(a, so, sign, co, len, tol, delta);
+        }
+        double theta = Double.POSITIVE_INFINITY;
+        for (int i = 0, ks = so, kc = co; i < len; i++, ks += ss, kc += cs) {
+            double num = sign * a[ks];
+            if (num > tol) theta = Math.min(theta, (a[kc] + delta) / num);
+        }
+        if (theta == Double.POSITIVE_INFINITY) return UNBOUNDED;
+
+        int index = -1;
+        double max = 0;
+        for (int i = 0, ks = so, kc = co; i < len; i++, ks += ss, kc += cs) {
+            double num = sign * a[ks];
+            if (num > tol && a[kc] <= theta * num && num > max) {
+                max = num;
+                index = i;
+            }
+        }
+        return index;
+    }
+
+
+
+    /**
+     * Count the values sign * a[so + i*ss], 0 &lt;= i &lt; len, that are
+     * positive but at most tol.
+     */
+    public static int tiny(double[] a, int so, int ss, double sign, int len,
+                           double tol) {
+        if (UNIT != null && ss == 1) return UNIT.tiny(a, so, sign, len, tol);
+        int count = 0;
+        for (int i = 0, k = so; i < len; i++, k += ss) {
+            double num = sign * a[k];
+            if (num > 0 && num <= tol) count++;
+        }
+        return count;
+    }
+
+
+
+    /**
+     * y[yo + j] -= f * x[xo + j] for 0 &lt;= j &lt; len.
+     */
+    public static void axpy(double f, double[] x, int xo, double[] y, int yo,
+                            int len) {
+        if (UNIT != null) {
+            UNIT.axpy(f, x, xo, y, yo, len);
+            return;
+        }
+        for (int j = 0; j < len; j++) y[yo + j] -= f * x[xo + j];
+    }
+
+
+
+    /**
+     * x[xo + j] *= f for 0 &lt;= j &lt; len.
+     */
+    public static void scale(double f, double[] x, int xo, int len) {
+        if (UNIT != null) {
+            UNIT.scale(f, x, xo, len);
+            return;
+        }
+        for (int j = 0; j < len; j++) x[xo + j] *= f;
+    }
+
+
+
+    /** See {@link #axpy(double, double[], int, double[], int, int)}. */
+    public static void axpy(double f, double[] x, int xo, DoubleBuffer y,
+                            int yo, int len) {
+        for (int j = 0; j < len; j++) {
+            y.put(yo + j, y.get(yo + j) - f * x[xo + j]);
+        }
+    }
+}
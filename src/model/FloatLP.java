@@ -0,0 +1,867 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Locale;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.apache.commons.math3.linear.FieldMatrix;
+import org.apache.commons.math3.linear.FieldVector;
+import org.apache.commons.math3.linear.SingularMatrixException;
+
+/**
+ * A linear program in dictionary form using double precision numbers.
+ * <p>
+ * Unlike {@code LP}, a {@code FloatLP} is mutable: every pivot updates the
+ * dictionary in place. It is meant for finding a good basis quickly. The
+ * basis can then be handed to {@link LP#basis(int[], int[])} to get the
+ * exact dictionary.
+ * </p>
+ * <p>
+ * The dictionary is stored as one tableau, row-major with a stride of n+1:
+ * row i holds row i of B_^-1 N_ followed by x_b, and row m holds z_n
+ * followed by the objective value.
+ * </p>
+ * <p>
+ * Small tableaus are stored in a single array on the heap. Larger ones can
+ * be stored off the heap, or in a scratch file mapped into memory so that
+ * their size is limited by disk rather than memory (see {@link Storage}).
+ * These are split into segments of whole rows, as a single buffer can hold
+ * at most 2 GB. A pivot streams through the segments a block of rows at a
+ * time, and the ratio tests read only the rows and columns they need. The
+ * memory and scratch file are freed by {@link #release()}.
+ * </p>
+ *
+ * @author  Andreas Halle
+ * @see     model.LP
+ * @see     model.Simplex
+ */
+public class FloatLP {
+    /** Values with an absolute value below this are considered zero. */
+    public static final double EPS = 1e-9;
+
+    /**
+     * Pivot elements with an absolute value below this are rejected by
+     * Harris' ratio test.
+     */
+    public static final double PIVOT_EPS = 1e-7;
+
+    /**
+     * The ratio test of new dictionaries. Set by the system property
+     * {@code pplex.ratio}, either {@code textbook} or {@code harris}. Any
+     * other value means {@code harris}.
+     */
+    public static final RatioTest RATIO_TEST = ratioTest(
+            System.getProperty("pplex.ratio"));
+
+    /**
+     * Dictionaries with at least this many entries are stored off the heap
+     * by {@link LP#floatDictionary()}. Set by the system property
+     * {@code pplex.offheap.threshold}.
+     */
+    public static final int OFF_HEAP = Integer.getInteger(
+            "pplex.offheap.threshold", 1 << 20);
+
+    /**
+     * Dictionaries with at least this many entries are stored in a mapped
+     * scratch file by {@link LP#floatDictionary()}. Set by the system
+     * property {@code pplex.mapped.threshold}.
+     */
+    public static final long MAPPED = Long.getLong(
+            "pplex.mapped.threshold", 1L << 27);
+
+    /*
+     * Directory of scratch files. Set by the system property
+     * pplex.scratch, and the default temporary directory if not set.
+     */
+    private static final String SCRATCH = System.getProperty("pplex.scratch");
+
+    /* Number of doubles in a segment of a tableau stored in buffers. */
+    private static final int SEGMENT = 1 << 27;
+
+    /* Number of doubles solved for at a time by refactor(). */
+    private static final int BLOCK = 1 << 20;
+
+    /**
+     * Ways of storing the tableau of a {@code FloatLP}.
+     */
+    public static enum Storage {
+        /** In an array on the heap. */
+        HEAP,
+        /** In direct buffers outside the heap. */
+        DIRECT,
+        /** In a scratch file mapped into memory. */
+        MAPPED;
+    }
+
+
+
+    /**
+     * Ways of choosing the leaving variable in {@link FloatLP#leaving}.
+     */
+    public static enum RatioTest {
+        /** The most bounding variable, with ties broken as in {@code LP}. */
+        TEXTBOOK,
+        /**
+         * Harris' two-pass test: the largest pivot element among the
+         * variables that bound the step once the bounds are relaxed by
+         * {@code EPS}. Pivot elements below {@code PIVOT_EPS} are rejected.
+         */
+        HARRIS;
+    }
+
+
+
+    /* The ratio test called name, or HARRIS if there is none by that name. */
+    private static RatioTest ratioTest(String name) {
+        if (name == null) return RatioTest.HARRIS;
+        try {
+            return RatioTest.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return RatioTest.HARRIS;
+        }
+    }
+
+
+
+    private int m;
+    private int n;
+    private int w;         // stride, n+1
+
+    private double[] t;    // [B_^-1 N_ | x_b] over [z_n | obj]
+    private double[] c;    // original objective, slack variables included
+
+    /*
+     * The original constraints, shared by copies: the non-zero entries of
+     * column k of N are nval[p] in rows nrow[p], ncol[k] <= p < ncol[k+1].
+     */
+    private int[] ncol;
+    private int[] nrow;
+    private double[] nval;
+    private double[] rhs;  // b
+
+    /*
+     * The tableau if it is not stored on the heap. Then t is null. Segment
+     * k holds rows k*rps to (k+1)*rps - 1.
+     */
+    private Storage storage;
+    private ByteBuffer[] raw;
+    private DoubleBuffer[] seg;
+    private int rps;
+    private File file;
+    private boolean released;
+
+    private int[] Bi;
+    private int[] Ni;
+
+    private RatioTest ratioTest = RATIO_TEST;
+    private int rejected; // Tiny pivot elements passed over.
+    private boolean phaseOne;
+
+
+
+    /**
+     * Initialize a double precision copy of the incumbent dictionary of the
+     * given linear program, stored on the heap.
+     *
+     * @param lp
+     *        A linear program.
+     */
+    public FloatLP(LP lp) {
+        this(lp, Storage.HEAP);
+    }
+
+
+
+    /**
+     * Initialize a double precision copy of the incumbent dictionary of the
+     * given linear program.
+     *
+     * @param  lp
+     *         A linear program.
+     * @param  storage
+     *         Where to store the dictionary.
+     * @throws IllegalArgumentException
+     *         If the program has upper bounds on its variables.
+     * @throws RuntimeException
+     *         If a scratch file cannot be created or mapped.
+     */
+    public FloatLP(LP lp, Storage storage) {
+        if (lp.hasBounds()) {
+            throw new IllegalArgumentException("Illegal operation: A double"
+                    + " precision dictionary cannot hold a program with upper"
+                    + " bounds.");
+        }
+        FieldVector<BigFraction> obj = lp.getObjFunction();
+
+        m = lp.getNoBasic();
+        n = lp.getNoNonBasic();
+        w = n + 1;
+        allocate(storage);
+        c = new double[n + m];
+        for (int j = 0; j < obj.getDimension(); j++) {
+            c[j] = obj.getEntry(j).doubleValue();
+        }
+        original(lp.coefficients(), lp.getConsValues());
+
+        /*
+         * Row by row, so that neither the tableau nor the dictionary of lp
+         * is ever held on the heap as a whole.
+         */
+        FieldVector<BigFraction> x_b = lp.getBasis();
+        for (int i = 0; i < m; i++) {
+            FieldVector<BigFraction> row = lp.binRow(i);
+            for (int j = 0; j < n; j++) {
+                set(i, j, row.getEntry(j).doubleValue());
+            }
+            set(i, n, x_b.getEntry(i).doubleValue());
+        }
+        FieldVector<BigFraction> z_n = lp.reducedCosts();
+        for (int j = 0; j < n; j++) set(m, j, z_n.getEntry(j).doubleValue());
+        set(m, n, lp.objVal().doubleValue());
+
+        Bi = lp.getBasicIndices().clone();
+        Ni = lp.getNonBasicIndices().clone();
+    }
+
+
+
+    /* A copy of the given dictionary, stored the same way. */
+    private FloatLP(FloatLP flp) {
+        m = flp.m;
+        n = flp.n;
+        w = flp.w;
+        if (flp.t != null) {
+            t = flp.t.clone();
+            storage = Storage.HEAP;
+        } else {
+            allocate(flp.storage);
+            for (int k = 0; k < raw.length; k++) {
+                raw[k].put(flp.raw[k].duplicate().clear());
+                raw[k].clear();
+            }
+        }
+        c = flp.c;
+        ncol = flp.ncol;
+        nrow = flp.nrow;
+        nval = flp.nval;
+        rhs = flp.rhs;
+        Bi = flp.Bi.clone();
+        Ni = flp.Ni.clone();
+        ratioTest = flp.ratioTest;
+        rejected = flp.rejected;
+        phaseOne = flp.phaseOne;
+    }
+
+
+
+    /* Keep the original constraints [N | b], N by sparse columns. */
+    private void original(FieldMatrix<BigFraction> N,
+                          FieldVector<BigFraction> b) {
+        int cols = N.getColumnDimension();
+        ncol = new int[cols + 1];
+        rhs = new double[m];
+        for (int i = 0; i < m; i++) rhs[i] = b.getEntry(i).doubleValue();
+
+        int nnz = 0;
+        for (int k = 0; k < cols; k++) {
+            for (int i = 0; i < m; i++) {
+                if (!isZero(N, i, k)) nnz++;
+            }
+        }
+
+        nrow = new int[nnz];
+        nval = new double[nnz];
+        int p = 0;
+        for (int k = 0; k < cols; k++) {
+            ncol[k] = p;
+            for (int i = 0; i < m; i++) {
+                if (isZero(N, i, k)) continue;
+                nrow[p] = i;
+                nval[p++] = N.getEntry(i, k).doubleValue();
+            }
+        }
+        ncol[cols] = p;
+    }
+
+
+
+    /* Whether entry (i, k) of N is zero, read without reducing it. */
+    private static boolean isZero(FieldMatrix<BigFraction> N, int i, int k) {
+        if (N instanceof CompactMatrix) {
+            return Rationals.isZero(((CompactMatrix) N).getNumerator(i, k));
+        }
+        return Rationals.isZero(N.getEntry(i, k));
+    }
+
+
+
+    private void allocate(Storage storage) {
+        this.storage = storage;
+        long size = (long) (m+1) * w;
+        if (storage == Storage.HEAP) {
+            if (size > Integer.MAX_VALUE) {
+                String e = String.format("Cannot store %d doubles on the heap.",
+                                         size);
+                throw new IllegalArgumentException(e);
+            }
+            t = new double[(int) size];
+            return;
+        }
+
+        if (w > SEGMENT) {
+            String e = String.format("Cannot store rows of %d doubles.", w);
+            throw new IllegalArgumentException(e);
+        }
+        rps = SEGMENT / w;
+        int segs = (m + rps) / rps;
+        raw = new ByteBuffer[segs];
+        seg = new DoubleBuffer[segs];
+
+        if (storage == Storage.MAPPED) {
+            map(segs);
+        } else {
+            for (int k = 0; k < segs; k++) raw[k] = OffHeap.allocate(rows(k));
+        }
+        for (int k = 0; k < segs; k++) seg[k] = raw[k].asDoubleBuffer();
+    }
+
+
+
+    /* Number of doubles in segment k. */
+    private long rows(int k) {
+        return (long) (Math.min(m+1, (k+1) * rps) - k*rps) * w;
+    }
+
+
+
+    /*
+     * Map the segments onto a new scratch file. The file is deleted at once
+     * where the system allows it, as the mapping stays valid.
+     */
+    private void map(int segs) {
+        RandomAccessFile f = null;
+        try {
+            File dir = SCRATCH == null ? null : new File(SCRATCH);
+            file = File.createTempFile("pplex", ".tableau", dir);
+            f = new RandomAccessFile(file, "rw");
+            f.setLength((long) (m+1) * w * 8);
+
+            long pos = 0;
+            for (int k = 0; k < segs; k++) {
+                raw[k] = OffHeap.map(f.getChannel(), pos, rows(k));
+                pos += rows(k) * 8;
+            }
+        } catch (IOException e) {
+            release();
+            String s = String.format("Cannot map scratch file: %s",
+                                     e.getMessage());
+            throw new RuntimeException(s, e);
+        } finally {
+            try {
+                if (f != null) f.close();
+            } catch (IOException e) {
+                /* The mapping does not depend on the file being open. */
+            }
+        }
+        if (file.delete()) file = null;
+    }
+
+
+
+    /* Entry (i, j) of the tableau. */
+    private double get(int i, int j) {
+        if (t != null) return t[i*w + j];
+        return seg[i / rps].get((i % rps) * w + j);
+    }
+
+
+
+    private void set(int i, int j, double v) {
+        if (t != null) t[i*w + j] = v;
+        else seg[i / rps].put((i % rps) * w + j, v);
+    }
+
+
+
+    /* Copy len entries of row i from column j on into a. */
+    private void row(int i, int j, double[] a, int len) {
+        if (t != null) {
+            System.arraycopy(t, i*w + j, a, 0, len);
+            return;
+        }
+        DoubleBuffer b = seg[i / rps].duplicate();
+        b.position((i % rps) * w + j);
+        b.get(a, 0, len);
+    }
+
+
+
+    /*
+     * Throw an exception if the dictionary has been released. Only the
+     * public methods check this.
+     */
+    private void live() {
+        if (released) {
+            throw new IllegalStateException("Dictionary has been released.");
+        }
+    }
+
+
+
+    /**
+     * @return
+     *         A copy of this dictionary, stored the same way.
+     */
+    public FloatLP copy() {
+        live();
+        return new FloatLP(this);
+    }
+
+
+
+    /**
+     * Free the memory of a dictionary stored outside the heap, and delete
+     * its scratch file, at once rather than when it is garbage collected.
+     * The dictionary can not be used afterwards. Releasing a dictionary more
+     * than once has no effect.
+     */
+    public void release() {
+        if (released) return;
+        released = true;
+        if (raw != null) {
+            for (ByteBuffer b : raw) {
+                if (b != null) OffHeap.free(b);
+            }
+        }
+        if (file != null) file.delete();
+        raw = null;
+        seg = null;
+        t = null;
+        file = null;
+    }
+
+
+
+    /**
+     * @return
+     *         Where the dictionary is stored.
+     */
+    public Storage getStorage() {
+        return storage;
+    }
+
+
+
+    /**
+     * Set the ratio test used to choose leaving variables.
+     *
+     * @param ratioTest
+     *        A ratio test.
+     */
+    public void setRatioTest(RatioTest ratioTest) {
+        this.ratioTest = ratioTest;
+    }
+
+
+
+    public RatioTest getRatioTest() {
+        return ratioTest;
+    }
+
+
+
+    /**
+     * @return
+     *         The number of pivot elements that were positive but too small
+     *         for the ratio test, over all leaving variables found.
+     */
+    public int getRejectedPivots() {
+        return rejected;
+    }
+
+
+
+    /**
+     * @return
+     *         True if the dictionary is stored off the heap.
+     */
+    public boolean isOffHeap() {
+        return storage != Storage.HEAP;
+    }
+
+
+
+    /**
+     * Find an entering variable index according to the largest coefficient
+     * rule.
+     *
+     * @param  dual
+     *         If true, find an entering variable index for the dual dictionary.
+     *         Otherwise, find one for the primal dictionary.
+     * @return
+     *         An entering variable index, or -1 if there is none.
+     */
+    public int entering(boolean dual) {
+        live();
+        if (t != null) {
+            int off = dual ? n : m*w;
+            int step = dual ? w : 1;
+            int len = dual ? m : n;
+            return FloatKernels.argmin(t, off, step, len, -EPS);
+        }
+
+        double[] a;
+        if (dual) {
+            a = new double[m];
+            for (int i = 0; i < m; i++) a[i] = get(i, n);
+        } else {
+            a = new double[n];
+            row(m, 0, a, n);
+        }
+        return FloatKernels.argmin(a, 0, 1, a.length, -EPS);
+    }
+
+
+
+    /**
+     * Find a leaving variable index for the given entering variable index by
+     * the ratio test of this dictionary (see {@link RatioTest}). Pivot
+     * elements that are positive but too small for the test are counted by
+     * {@link #getRejectedPivots()}.
+     *
+     * @param  entering
+     *         an entering variable index.
+     * @param  dual
+     *         If true, find a leaving variable index for the dual dictionary.
+     *         Otherwise, find one for the primal dictionary.
+     * @return
+     *         A leaving variable index.
+     * @throws RuntimeException
+     *         If no variable bounds the step. Harris' test does not pivot on
+     *         elements below {@code PIVOT_EPS}, so it also throws if these
+     *         are the only ones bounding it.
+     */
+    public int leaving(int entering, boolean dual) {
+        live();
+        int len = dual ? n : m;
+        double sign = dual ? -1 : 1;
+        double tol = (ratioTest == RatioTest.HARRIS) ? PIVOT_EPS : EPS;
+
+        int index;
+        if (t != null) {
+            /* Offsets and strides of check (c_ or b_) and the direction. */
+            int co = dual ? m*w : n;
+            int cs = dual ? 1 : w;
+            int so = dual ? entering*w : entering;
+            int ss = dual ? 1 : w;
+            index = ratio(t, so, ss, sign, co, cs, len);
+            rejected += FloatKernels.tiny(t, so, ss, sign, len, tol);
+        } else {
+            /* Gather the direction and check next to each other. */
+            double[] a = new double[2*len];
+            if (dual) {
+                row(entering, 0, a, n);
+                double[] z = new double[n];
+                row(m, 0, z, n);
+                System.arraycopy(z, 0, a, n, n);
+            } else {
+                for (int i = 0; i < m; i++) {
+                    a[i] = get(i, entering);
+                    a[m + i] = get(i, n);
+                }
+            }
+            index = ratio(a, 0, 1, sign, len, 1, len);
+            rejected += FloatKernels.tiny(a, 0, 1, sign, len, tol);
+        }
+        if (index == FloatKernels.UNBOUNDED) {
+            throw new RuntimeException("Program is unbounded");
+        }
+        return index;
+    }
+
+
+
+    /* The ratio test of this dictionary. See FloatKernels. */
+    private int ratio(double[] a, int so, int ss, double sign, int co, int cs,
+                      int len) {
+        if (ratioTest == RatioTest.HARRIS) {
+            return FloatKernels.harris(a, so, ss, sign, co, cs, len,
+                                       PIVOT_EPS, EPS);
+        }
+        return FloatKernels.ratio(a, so, ss, sign, co, cs, len, EPS);
+    }
+
+
+
+    /**
+     * Do one iteration of the simplex method in place.
+     *
+     * @param  entering
+     *         Index of variable to enter the basis.
+     * @param  leaving
+     *         Index of variable to leave the basis.
+     */
+    public void pivot(int entering, int leaving) {
+        live();
+        final int r = leaving;
+        final int s = entering;
+        final int ro = r * w;
+        double p = get(r, s);
+        if (Math.abs(p) <= EPS) {
+            throw new RuntimeException("Illegal pivot on a zero element.");
+        }
+
+        final double pi = 1 / p;
+        final double[] pr;
+        if (t != null) {
+            FloatKernels.scale(pi, t, ro, w);
+            t[ro + s] = pi;
+            pr = t;
+        } else {
+            /* The pivot row is kept on the heap while the rest stream by. */
+            pr = new double[w];
+            row(r, 0, pr, w);
+            FloatKernels.scale(pi, pr, 0, w);
+            pr[s] = pi;
+            DoubleBuffer b = seg[r / rps].duplicate();
+            b.position((r % rps) * w);
+            b.put(pr);
+        }
+        final int po = (t != null) ? ro : 0;
+
+        /* The rows are independent, so they are updated in parallel. */
+        Parallel.rows(m+1, w, new Parallel.Rows() {
+            public void run(int lo, int hi) {
+                for (int i = lo; i < hi; i++) {
+                    if (i == r) continue;
+                    if (t != null) {
+                        int io = i * w;
+                        double f = t[io + s];
+                        if (f == 0) continue;
+                        FloatKernels.axpy(f, pr, po, t, io, w);
+                        t[io + s] = -f * pi;
+                    } else {
+                        DoubleBuffer b = seg[i / rps];
+                        int io = (i % rps) * w;
+                        double f = b.get(io + s);
+                        if (f == 0) continue;
+                        FloatKernels.axpy(f, pr, po, b, io, w);
+                        b.put(io + s, -f * pi);
+                    }
+                }
+            }
+        });
+
+        int tmp = Bi[r];
+        Bi[r] = Ni[s];
+        Ni[s] = tmp;
+    }
+
+
+
+    /**
+     * Do one iteration of the simplex method in place, choosing entering and
+     * leaving variables according to the largest coefficient rule.
+     *
+     * @param  dual
+     *         If true, run the dual simplex method.
+     *         Otherwise, run the primal simplex method.
+     */
+    public void pivot(boolean dual) {
+        int e = entering(dual);
+        if (e == -1) {
+            throw new RuntimeException("Incumbent basic solution is optimal.");
+        }
+        int l = leaving(e, dual);
+        if (dual) pivot(l, e);
+        else pivot(e, l);
+    }
+
+
+
+    /**
+     * Replace the objective function with one making the dictionary dually
+     * feasible, keeping the dictionary.
+     */
+    public void phaseOneObj() {
+        live();
+        for (int j = 0; j < n; j++) set(m, j, 1);
+        phaseOne = true;
+    }
+
+
+
+    /**
+     * Reinstate the original objective function according to the incumbent
+     * dictionary.
+     */
+    public void reinstate() {
+        live();
+        double[] z = new double[n];
+        for (int j = 0; j < n; j++) z[j] = -c[Ni[j]];
+
+        /* Row by row, skipping basic variables with no cost. */
+        double[] a = new double[n];
+        for (int i = 0; i < m; i++) {
+            double ci = c[Bi[i]];
+            if (ci == 0) continue;
+            row(i, 0, a, n);
+            for (int j = 0; j < n; j++) z[j] += ci * a[j];
+        }
+        for (int j = 0; j < n; j++) set(m, j, z[j]);
+        phaseOne = false;
+    }
+
+
+
+    /**
+     * Recompute the incumbent dictionary from the original program,
+     * discarding the rounding errors that pivots have accumulated.
+     * <p>
+     * The basis matrix is decomposed by {@link FloatLU}, and B_^-1 N_ and
+     * x_b are found by its blocked solve, a block of columns at a time. The
+     * objective row is then recomputed by {@link #reinstate()}, unless the
+     * phase one objective is in use, which is kept.
+     * </p>
+     *
+     * @throws SingularMatrixException
+     *         If the basis matrix is numerically singular.
+     * @throws IllegalArgumentException
+     *         If the basis matrix cannot be stored on the heap.
+     */
+    public void refactor() {
+        live();
+        if ((long) m * m > Integer.MAX_VALUE) {
+            String e = String.format("Cannot store %d doubles on the heap.",
+                                     (long) m * m);
+            throw new IllegalArgumentException(e);
+        }
+        double[] basis = new double[m * m];
+        for (int i = 0; i < m; i++) column(Bi[i], basis, i, m);
+        FloatLU lu = new FloatLU(basis, m);
+
+        /* The columns of N_ followed by b, about BLOCK entries at a time. */
+        int cols = Math.max(1, BLOCK / Math.max(1, m));
+        for (int j0 = 0; j0 <= n; j0 += cols) {
+            int len = Math.min(n + 1, j0 + cols) - j0;
+            double[] x = new double[m * len];
+            for (int j = 0; j < len; j++) {
+                if (j0 + j < n) {
+                    column(Ni[j0 + j], x, j, len);
+                } else {
+                    for (int i = 0; i < m; i++) x[i*len + j] = rhs[i];
+                }
+            }
+            x = lu.solve(x, len);
+            for (int i = 0; i < m; i++) {
+                for (int j = 0; j < len; j++) set(i, j0 + j, x[i*len + j]);
+            }
+        }
+
+        if (phaseOne) return;
+        reinstate();
+        set(m, n, objVal());
+    }
+
+
+
+    /* Column k of [N | I] into column j of a zeroed matrix with ld columns. */
+    private void column(int k, double[] a, int j, int ld) {
+        int cols = ncol.length - 1;
+        if (k >= cols) {
+            a[(k - cols)*ld + j] = 1;
+            return;
+        }
+        for (int p = ncol[k]; p < ncol[k+1]; p++) a[nrow[p]*ld + j] = nval[p];
+    }
+
+
+
+    /**
+     * Return whether the incumbent basic solution is feasible or not, up to
+     * a tolerance of {@code EPS}.
+     *
+     * @param  dual
+     *         If true, check for dual feasibility.
+     *         Otherwise, check for primal feasibility.
+     * @return
+     *         True if the basic solution is feasible. False otherwise.
+     */
+    public boolean feasible(boolean dual) {
+        live();
+        int len = dual ? n : m;
+        for (int k = 0; k < len; k++) {
+            double v = dual ? get(m, k) : get(k, n);
+            if (v < -EPS) return false;
+        }
+        return true;
+    }
+
+
+
+    /**
+     * Return whether the incumbent basic solution is optimal or not, up to
+     * a tolerance of {@code EPS}.
+     *
+     * @return
+     *         True if the basic solution is optimal. False otherwise.
+     */
+    public boolean optimal() {
+        return feasible(false) && feasible(true);
+    }
+
+
+
+    public double objVal() {
+        live();
+        double sum = 0;
+        for (int i = 0; i < m; i++) sum += c[Bi[i]] * get(i, n);
+        return sum;
+    }
+
+
+
+    public int getNoNonBasic() {
+        return n;
+    }
+
+
+
+    public int getNoBasic() {
+        return m;
+    }
+
+
+
+    public int[] getNonBasicIndices() {
+        return Ni;
+    }
+
+
+
+    public int[] getBasicIndices() {
+        return Bi;
+    }
+}
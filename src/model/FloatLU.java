@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import org.apache.commons.math3.linear.SingularMatrixException;
+
+/**
+ * LU decomposition of a square matrix of doubles with partial pivoting,
+ * PA = LU.
+ * <p>
+ * The decomposition is blocked: a panel of columns is decomposed one column
+ * at a time, then the rows of U right of the panel are found by a triangular
+ * solve and the rest of the matrix is updated by a single product, both with
+ * the parallel kernels of {@link FloatBlas}. Most of the work is thus in the
+ * product, which keeps its operands in cache.
+ * </p>
+ *
+ * @author  Andreas Halle
+ * @see     model.FloatBlas
+ */
+public class FloatLU {
+    /* Columns per panel. */
+    private static final int NB = 64;
+
+    private final int m;
+    private final double[] lu; // L below the diagonal, U on and above.
+    private final int[] pivot;
+
+
+
+    /**
+     * Compute the LU decomposition of the given matrix.
+     *
+     * @param  a
+     *         An m x m matrix, row-major. It is not modified.
+     * @param  m
+     *         Number of rows and columns.
+     * @throws SingularMatrixException
+     *         If no pivot larger than {@code FloatLP.EPS} is left in a column.
+     */
+    public FloatLU(double[] a, int m) {
+        this.m = m;
+        lu = a.clone();
+        pivot = new int[m];
+        for (int i = 0; i < m; i++) pivot[i] = i;
+
+        for (int j0 = 0; j0 < m; j0 += NB) {
+            int j1 = Math.min(m, j0 + NB);
+            panel(j0, j1);
+            if (j1 == m) break;
+
+            /* U12 = L11^-1 A12, then A22 -= L21 U12. */
+            FloatBlas.lower(j1 - j0, m - j1, lu, j0*m + j0, m,
+                            lu, j0*m + j1, m);
+            FloatBlas.gemm(m - j1, m - j1, j1 - j0, lu, j1*m + j0, m,
+                           lu, j0*m + j1, m, lu, j1*m + j1, m);
+        }
+    }
+
+
+
+    /* Decompose columns j0 to j1 of the rows from j0 down. */
+    private void panel(int j0, int j1) {
+        for (int k = j0; k < j1; k++) {
+            int p = k;
+            for (int i = k + 1; i < m; i++) {
+                if (Math.abs(lu[i*m + k]) > Math.abs(lu[p*m + k])) p = i;
+            }
+            if (Math.abs(lu[p*m + k]) <= FloatLP.EPS) {
+                throw new SingularMatrixException();
+            }
+            if (p != k) swap(p, k);
+
+            double d = lu[k*m + k];
+            for (int i = k + 1; i < m; i++) {
+                double f = lu[i*m + k] / d;
+                lu[i*m + k] = f;
+                if (f == 0) continue;
+                FloatKernels.axpy(f, lu, k*m + k + 1, lu, i*m + k + 1,
+                                  j1 - k - 1);
+            }
+        }
+    }
+
+
+
+    /* Swap rows p and k. */
+    private void swap(int p, int k) {
+        for (int j = 0; j < m; j++) {
+            double tmp = lu[p*m + j];
+            lu[p*m + j] = lu[k*m + j];
+            lu[k*m + j] = tmp;
+        }
+        int t = pivot[p];
+        pivot[p] = pivot[k];
+        pivot[k] = t;
+    }
+
+
+
+    /**
+     * @return
+     *         The pivot permutation vector: row i of PA is row pivot[i] of A.
+     */
+    public int[] getPivot() {
+        return pivot.clone();
+    }
+
+
+
+    /**
+     * Solve A X = B.
+     *
+     * @param  b
+     *         An m x n matrix B, row-major. It is not modified.
+     * @param  n
+     *         Number of columns of B.
+     * @return
+     *         X, row-major.
+     */
+    public double[] solve(double[] b, int n) {
+        double[] x = new double[m * n];
+        for (int i = 0; i < m; i++) {
+            System.arraycopy(b, pivot[i] * n, x, i * n, n);
+        }
+        FloatBlas.lower(m, n, lu, 0, m, x, 0, n);
+        FloatBlas.upper(m, n, lu, 0, m, x, 0, n);
+        return x;
+    }
+}
@@ -18,12 +18,13 @@
  */
 package model;
 
+import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import org.apache.commons.math3.fraction.BigFraction;
 import org.apache.commons.math3.linear.Array2DRowFieldMatrix;
 import org.apache.commons.math3.linear.ArrayFieldVector;
-import org.apache.commons.math3.linear.FieldLUDecomposition;
 import org.apache.commons.math3.linear.FieldMatrix;
 import org.apache.commons.math3.linear.FieldVector;
 
@@ -35,6 +36,40 @@ import org.apache.commons.math3.linear.FieldVector;
 public class LP {
     public static final int UNDER = 0;
     public static final int RIGHT = 1;
+
+    /**
+     * How the coefficients B_^-1 N_ of the dictionary are computed.
+     */
+    public static enum Engine {
+        REVISED("Solve for the dictionary from the basis every time it is"
+              + " needed. (default)"),
+        DICTIONARY("Keep the dictionary and update it on every pivot. Uses"
+                 + " more memory for the history.")
+        ;
+
+        String desc;
+
+        Engine(String desc) {
+            this.desc = desc;
+        }
+
+        public String getDesc() {
+            return desc;
+        }
+    }
+
+    /**
+     * How the entering variable of a pivot is chosen.
+     */
+    public static enum Rule {
+        /** The variable with the largest coefficient. */
+        LARGEST_COEFFICIENT,
+        /**
+         * The variable whose pivot improves the objective value the most.
+         * The ratio test is run for every candidate, in parallel.
+         */
+        GREATEST_IMPROVEMENT;
+    }
     
     private FieldMatrix<BigFraction> B;
     private FieldMatrix<BigFraction> N;
@@ -50,6 +85,26 @@ public class LP {
     
     private int[] Bi;
     private int[] Ni;
+
+    private Engine engine;
+    private FieldMatrix<BigFraction> bin; // B_^-1 N_, kept by DICTIONARY.
+
+    private SparseLU lu; // Decomposition of B_, made when needed.
+    private int[] pos;   // Inverse of Ni, made when needed.
+
+    /*
+     * Upper bounds of the variables by index, null where there is none, and
+     * whether each non-basic variable is at its upper bound rather than at
+     * zero. Both are null if the program has no upper bounds.
+     */
+    private BigFraction[] u;
+    private boolean[] up;
+    private int flips; // Bound flips done by the pivot that made this LP.
+
+    /* Computed once, as an LP never changes. */
+    private BigFraction objVal;
+    private boolean primalFeasible;
+    private boolean dualFeasible;
     
     
     
@@ -83,9 +138,10 @@ public class LP {
      */
     public LP(FieldMatrix<BigFraction> N, FieldVector<BigFraction> b,
               FieldVector<BigFraction> c, HashMap<Integer, String> x) {
-        this(null, N, b, c, null, N.copy(), b.copy(),
-                c.mapMultiply(BigFraction.MINUS_ONE).copy(), x,
-                new int[N.getRowDimension()], new int[N.getColumnDimension()]);
+        this(null, CompactMatrix.of(N), b, c, null, CompactMatrix.of(N),
+                b.copy(), Rationals.negate(c), x,
+                new int[N.getRowDimension()], new int[N.getColumnDimension()],
+                Engine.REVISED, null, null, null);
 
         /* Create an identity matrix of BigFraction */
         int m = N.getRowDimension();
@@ -94,7 +150,7 @@ public class LP {
             Arrays.fill(Bd[i], BigFraction.ZERO);
             Bd[i][i] = BigFraction.ONE;
         }
-        FieldMatrix<BigFraction> B = new Array2DRowFieldMatrix<BigFraction>(Bd);
+        FieldMatrix<BigFraction> B = CompactMatrix.of(Bd, m);
         
         this.B = B;
         this.B_ = B.copy();
@@ -104,6 +160,7 @@ public class LP {
             Bi[i] = i + Ni.length;
             x.put(Bi[i], "w" + (i+1));
         }
+        status();
     }
     
     
@@ -112,7 +169,9 @@ public class LP {
        FieldVector<BigFraction> b,  FieldVector<BigFraction> c,
        FieldMatrix<BigFraction> B_, FieldMatrix<BigFraction> N_,
        FieldVector<BigFraction> b_, FieldVector<BigFraction> c_,
-       HashMap<Integer, String> x, int[] Bi, int[] Ni) {
+       HashMap<Integer, String> x, int[] Bi, int[] Ni,
+       Engine engine, FieldMatrix<BigFraction> bin, BigFraction[] u,
+       boolean[] up) {
         this.B = B;
         this.N = N;
         this.b = b;
@@ -127,6 +186,95 @@ public class LP {
 
         this.Bi = Bi;
         this.Ni = Ni;
+
+        this.engine = engine;
+        this.bin = bin;
+
+        this.u = u;
+        this.up = up;
+
+        status();
+    }
+
+
+
+    /*
+     * Compute the objective value and the feasibility of the incumbent basic
+     * solution, so that later queries do not have to scan the dictionary.
+     */
+    private void status() {
+        RationalSum sum = new RationalSum();
+        for (int i = 0; i < Bi.length; i++) {
+            int j = Bi[i];
+            if (j < c.getDimension()) {
+                sum.addProduct(c.getEntry(j), b_.getEntry(i));
+            }
+        }
+        for (int j = 0; j < Ni.length; j++) {
+            if (atUpper(Ni[j])) sum.addProduct(objCoeff(Ni[j]), u[Ni[j]]);
+        }
+        objVal = sum.value();
+
+        if (u == null) {
+            primalFeasible = b_.getDimension() == 0
+                    || getMinValue(b_).compareTo(BigFraction.ZERO) >= 0;
+            dualFeasible = c_.getDimension() == 0
+                    || getMinValue(c_).compareTo(BigFraction.ZERO) >= 0;
+            return;
+        }
+        primalFeasible = true;
+        for (int i = 0; i < Bi.length; i++) {
+            if (!Rationals.isZero(infeasibility(i))) primalFeasible = false;
+        }
+        dualFeasible = true;
+        for (int j = 0; j < Ni.length; j++) {
+            if (!Rationals.isZero(dualInfeasibility(j))) dualFeasible = false;
+        }
+    }
+
+
+
+    /* Upper bound of variable k, or null if it has none. */
+    BigFraction upper(int k) {
+        return (u == null) ? null : u[k];
+    }
+
+
+
+    /* Whether non-basic variable k is at its upper bound. */
+    boolean atUpper(int k) {
+        return up != null && up[k];
+    }
+
+
+
+    /* Bound flags with every non-basic variable at zero, if any bounds. */
+    private boolean[] lower() {
+        return (u == null) ? null : new boolean[u.length];
+    }
+
+
+
+    /* How far basic variable i is outside its bounds, or zero. */
+    private BigFraction infeasibility(int i) {
+        BigFraction v = b_.getEntry(i);
+        if (v.compareTo(BigFraction.ZERO) < 0) return Rationals.negate(v);
+        BigFraction ub = upper(Bi[i]);
+        if (ub != null && v.compareTo(ub) > 0) return Rationals.subtract(v, ub);
+        return BigFraction.ZERO;
+    }
+
+
+
+    /*
+     * How far the reduced cost of non-basic variable j is from optimal for
+     * the bound the variable is at, or zero.
+     */
+    private BigFraction dualInfeasibility(int j) {
+        BigFraction v = c_.getEntry(j);
+        int sign = atUpper(Ni[j]) ? -v.compareTo(BigFraction.ZERO)
+                                  : v.compareTo(BigFraction.ZERO);
+        return (sign < 0) ? v.abs() : BigFraction.ZERO;
     }
     
     
@@ -212,23 +360,267 @@ public class LP {
     
     
 
+    /*
+     * Return B_^-1 N_, the coefficients of the non-basic variables in the
+     * incumbent dictionary (up to sign). The system is solved exactly by
+     * p-adic lifting rather than by an LU decomposition over the rationals.
+     * With the DICTIONARY engine, the result is kept.
+     */
+    private FieldMatrix<BigFraction> bin() {
+        if (bin != null) return bin;
+        FieldMatrix<BigFraction> sol = Dixon.solve(B_, N_);
+        if (engine == Engine.DICTIONARY) return bin = CompactMatrix.of(sol);
+        return sol;
+    }
+
+
+
+    /* Give lp, which has the basis of this program, its decomposition. */
+    private LP sameBasis(LP lp) {
+        lp.lu = lu;
+        lp.pos = pos;
+        return lp;
+    }
+
+
+
+    /* Return the LU decomposition of B_. */
+    private SparseLU lu() {
+        if (lu == null) lu = new SparseLU(B_);
+        return lu;
+    }
+
+
+
+    /*
+     * Return column j of B_^-1 N_. Unless the DICTIONARY engine keeps it,
+     * it is found by one sparse solve with B_ (FTRAN).
+     */
+    private FieldVector<BigFraction> binColumn(int j) {
+        if (engine == Engine.DICTIONARY) return bin().getColumnVector(j);
+        return new ArrayFieldVector<BigFraction>(BigFraction.ONE.getField(),
+                lu().solve(N_.getColumn(j)), false);
+    }
+
+
+
+    /*
+     * Return column j of B_^-1 N_ times binDenominator(j), so that the
+     * DICTIONARY engine reads the numerators it keeps without reducing them.
+     */
+    private FieldVector<BigFraction> binNumerators(int j) {
+        if (engine != Engine.DICTIONARY) return binColumn(j);
+        FieldMatrix<BigFraction> bin = bin();
+        BigFraction[] col = new BigFraction[Bi.length];
+        for (int i = 0; i < col.length; i++) col[i] = numerator(bin, i, j);
+        return new ArrayFieldVector<BigFraction>(BigFraction.ONE.getField(),
+                                                 col, false);
+    }
+
+
+
+    /* The positive integer that binNumerators(j) is scaled by. */
+    private BigFraction binDenominator(int j) {
+        if (engine != Engine.DICTIONARY) return BigFraction.ONE;
+        return Rationals.intern(new BigFraction(denominator(bin(), j)));
+    }
+
+
+
+    /* Entry (i, j) of M over denominator(M, j), see CompactMatrix. */
+    private static BigFraction numerator(FieldMatrix<BigFraction> M, int i,
+                                         int j) {
+        if (M instanceof CompactMatrix) {
+            return ((CompactMatrix) M).getNumerator(i, j);
+        }
+        return M.getEntry(i, j);
+    }
+
+
+
+    /* The denominator shared by column j of M, or one. */
+    private static BigInteger denominator(FieldMatrix<BigFraction> M, int j) {
+        if (M instanceof CompactMatrix) {
+            return ((CompactMatrix) M).getDenominator(j);
+        }
+        return BigInteger.ONE;
+    }
+
+
+
+    /*
+     * Return row i of B_^-1 N_. Unless the DICTIONARY engine keeps it, it is
+     * found as row i of B_^-1 by one sparse solve with B_^T (BTRAN). Its
+     * non-zeros are scattered through the non-zeros of the same rows of the
+     * original [N | B], into the non-basic columns they belong to.
+     */
+    FieldVector<BigFraction> binRow(int i) {
+        if (engine == Engine.DICTIONARY) return bin().getRowVector(i);
+        BigFraction[] y = lu().solveTransposed(i);
+        int n = N.getColumnDimension();
+        int[][] np = ((CompactMatrix) N).rowPattern();
+        int[][] bp = ((CompactMatrix) B).rowPattern();
+
+        RationalSum[] sum = new RationalSum[Ni.length];
+        for (int k = 0; k < y.length; k++) {
+            if (Rationals.isZero(y[k])) continue;
+            scatter(sum, y[k], N, k, np[k], 0);
+            scatter(sum, y[k], B, k, bp[k], n);
+        }
+
+        BigFraction[] row = new BigFraction[Ni.length];
+        for (int j = 0; j < row.length; j++) {
+            if (sum[j] == null) {
+                row[j] = BigFraction.ZERO;
+            } else if (Ni[j] < n) {
+                row[j] = sum[j].value(denominator(N, Ni[j]));
+            } else {
+                row[j] = sum[j].value(denominator(B, Ni[j] - n));
+            }
+        }
+        return new ArrayFieldVector<BigFraction>(BigFraction.ONE.getField(),
+                                                 row, false);
+    }
+
+
+
+    /*
+     * Add f times the numerators of row k of M in the given columns to the
+     * sums of the non-basic variables they belong to. Column q of M is the
+     * column of variable off + q.
+     */
+    private void scatter(RationalSum[] sum, BigFraction f,
+                         FieldMatrix<BigFraction> M, int k, int[] cols,
+                         int off) {
+        int[] pos = position();
+        for (int q : cols) {
+            int j = pos[off + q];
+            if (j == -1) continue;
+            if (sum[j] == null) sum[j] = new RationalSum();
+            sum[j].addProduct(f, numerator(M, k, q));
+        }
+    }
+
+
+
+    /* The index among the non-basic variables of each variable, or -1. */
+    private int[] position() {
+        if (pos == null) {
+            int[] p = new int[Bi.length + Ni.length];
+            Arrays.fill(p, -1);
+            for (int j = 0; j < Ni.length; j++) p[Ni[j]] = j;
+            pos = p;
+        }
+        return pos;
+    }
+
+
+
+    /*
+     * Return B_^-1 N_ d. Each entry of d is divided by the denominator of its
+     * column once, and then multiplied by the numerators of the column.
+     */
+    private BigFraction[] binTimes(BigFraction[] d) {
+        boolean kept = engine == Engine.DICTIONARY;
+        FieldMatrix<BigFraction> M = kept ? bin() : N_;
+
+        BigFraction[] ds = new BigFraction[d.length];
+        for (int j = 0; j < d.length; j++) {
+            BigInteger den = denominator(M, j);
+            ds[j] = den.equals(BigInteger.ONE) ? d[j]
+                  : Rationals.divide(d[j], new BigFraction(den));
+        }
+
+        BigFraction[] rhs = new BigFraction[Bi.length];
+        for (int i = 0; i < rhs.length; i++) {
+            RationalSum sum = new RationalSum();
+            for (int j = 0; j < d.length; j++) {
+                if (!Rationals.isZero(ds[j])) {
+                    sum.addProduct(numerator(M, i, j), ds[j]);
+                }
+            }
+            rhs[i] = sum.value();
+        }
+        return kept ? rhs : lu().solve(rhs);
+    }
+
+
+
+    /*
+     * Return the dictionary after a pivot on entry (r, s) of the given
+     * B_^-1 N_, by the rank-one update of a dictionary pivot. Column s of
+     * the result holds the column of the variable that left the basis.
+     */
+    private static FieldMatrix<BigFraction> update(
+                    FieldMatrix<BigFraction> bin, final int r, final int s) {
+        int m = bin.getRowDimension();
+        final int n = bin.getColumnDimension();
+
+        final BigFraction[][] A = bin.getData();
+        final BigFraction[] row = A[r];
+        BigFraction p = row[s];
+
+        for (int j = 0; j < n; j++) {
+            if (j != s) row[j] = Rationals.divide(row[j], p);
+        }
+        row[s] = Rationals.divide(BigFraction.ONE, p);
+
+        /* The rows are independent, so they are updated in parallel. */
+        Parallel.rows(m, n, new Parallel.Rows() {
+            public void run(int lo, int hi) {
+                for (int i = lo; i < hi; i++) {
+                    BigFraction f = A[i][s];
+                    if (i == r || Rationals.isZero(f)) continue;
+
+                    for (int j = 0; j < n; j++) {
+                        if (j != s) A[i][j] = Rationals.subtractProduct(
+                                A[i][j], f, row[j]);
+                    }
+                    A[i][s] = Rationals.negate(Rationals.multiply(f, row[s]));
+                }
+            }
+        });
+        return CompactMatrix.of(A, n);
+    }
+
+
+
     /**
-     * Find an entering variable index according to the largest coefficient
-     * rule.
+     * Find an entering variable index according to the given rule. Programs
+     * with upper bounds always use the variable furthest out of bounds.
      *
      * @param  dual
      *         If true, find an entering variable index for the dual dictionary.
      *         Otherwise, find one for the primal dictionary.
+     * @param  rule
+     *         The pivot rule.
      * @return
      *         An entering variable index.
      */
-    private int entering(boolean dual) {
+    private int entering(boolean dual, Rule rule) {
         String e = "Incumbent basic solution is optimal.";
         String e2 = String.format("Incumbent basic solution is %s infeasible",
                                    dual ? "dually" : "primal");
 
         if (optimal(dual)) throw new RuntimeException(e);
         if (!feasible(dual)) throw new RuntimeException(e2);
+
+        /* With upper bounds, pick the variable furthest out of bounds. */
+        if (u != null) {
+            BigFraction max = BigFraction.ZERO;
+            int index = -1;
+            int len = dual ? Bi.length : Ni.length;
+            for (int i = 0; i < len; i++) {
+                BigFraction val = dual ? infeasibility(i)
+                                       : dualInfeasibility(i);
+                if (val.compareTo(max) > 0) {
+                    max = val;
+                    index = i;
+                }
+            }
+            return index;
+        }
+        if (rule == Rule.GREATEST_IMPROVEMENT) return greatest(dual);
         
         FieldVector<BigFraction> check = dual ? b_ : c_;
         
@@ -247,6 +639,71 @@ public class LP {
 
 
 
+    /*
+     * Find the entering variable index whose pivot improves the objective
+     * value of the primal or dual dictionary the most, the first of them on
+     * ties. The candidates are evaluated in parallel. One that no variable
+     * bounds is returned at once, as its pivot finds the program unbounded.
+     */
+    private int greatest(final boolean dual) {
+        FieldVector<BigFraction> check = dual ? b_ : c_;
+        final int[] cand = new int[check.getDimension()];
+        int count = 0;
+        for (int i = 0; i < cand.length; i++) {
+            if (check.getEntry(i).compareTo(BigFraction.ZERO) < 0) {
+                cand[count++] = i;
+            }
+        }
+
+        /* Make what the threads share before they start. */
+        if (engine == Engine.DICTIONARY) {
+            bin();
+        } else {
+            lu();
+            position();
+        }
+
+        /* A candidate costs a solve with B_ and a ratio test. */
+        final BigFraction[] gain = new BigFraction[count];
+        Parallel.rows(count, Bi.length * Ni.length, new Parallel.Rows() {
+            public void run(int lo, int hi) {
+                for (int q = lo; q < hi; q++) gain[q] = gain(cand[q], dual);
+            }
+        });
+
+        int index = -1;
+        BigFraction max = null;
+        for (int q = 0; q < count; q++) {
+            if (gain[q] == null) return cand[q];
+            if (max == null || gain[q].compareTo(max) > 0) {
+                max = gain[q];
+                index = cand[q];
+            }
+        }
+        return index;
+    }
+
+
+
+    /*
+     * Return how much a pivot with the given entering variable index
+     * improves the objective value, or null if no variable bounds it.
+     */
+    private BigFraction gain(int entering, boolean dual) {
+        FieldVector<BigFraction> check = dual ? c_ : b_;
+        FieldVector<BigFraction> sd = dual ? Rationals.negate(binRow(entering))
+                                           : binNumerators(entering);
+        int l = ratio(sd, check);
+        if (l == -1) return null;
+
+        BigFraction step = Rationals.divide(check.getEntry(l), sd.getEntry(l));
+        if (!dual) step = Rationals.multiply(step, binDenominator(entering));
+        BigFraction rate = (dual ? b_ : c_).getEntry(entering);
+        return Rationals.negate(Rationals.multiply(rate, step));
+    }
+
+
+
     /**
      * Return whether the program is feasible or not.
      *
@@ -257,9 +714,7 @@ public class LP {
      *         True if the program is feasible. False otherwise.
      */
     public boolean feasible(boolean dual) {
-        if (dual) return getMinValue(c_).compareTo(BigFraction.ZERO) >= 0.0;
-        return getMinValue(b_).compareTo(BigFraction.ZERO) >= 0.0;
-        
+        return dual ? dualFeasible : primalFeasible;
     }
 
 
@@ -279,60 +734,77 @@ public class LP {
      *         Otherwise, find one for the primal dictionary.
      * @return
      *         A leaving variable index.
+     * @throws UnboundedException
+     *         If there is no leaving variable.
      */
     private int leaving(int entering, boolean dual) {
         FieldVector<BigFraction> check;
         FieldVector<BigFraction> sd;
         
-        FieldMatrix<BigFraction> bin = new FieldLUDecomposition<BigFraction>(B_)
-                .getSolver().getInverse().multiply(N_);
-        
         if (dual) {
             check = c_;
-            FieldVector<BigFraction> unit = new ArrayFieldVector<BigFraction>(
-                    bin.getRowDimension(), BigFraction.ZERO);
-            unit.setEntry(entering, BigFraction.ONE);
-            sd = bin.transpose().scalarMultiply(BigFraction.MINUS_ONE)
-                    .operate(unit);
+            sd = Rationals.negate(binRow(entering));
         }
         else {
+            /* A positive scale of sd leaves the ratio test unchanged. */
             check = b_;
-            FieldVector<BigFraction> unit = new ArrayFieldVector<BigFraction>(
-                    bin.getColumnDimension(), BigFraction.ZERO);
-            unit.setEntry(entering, BigFraction.ONE);
-            sd = bin.operate(unit);
+            sd = binNumerators(entering);
+        }
+
+        int index = ratio(sd, check);
+        if (index == -1) {
+            Certificate cert = dual ? farkas(entering)
+                                    : ray(entering, binColumn(entering));
+            throw new UnboundedException("Program is unbounded", cert);
         }
+        return index;
+    }
+
+
 
+    /*
+     * The ratio test of leaving(), on step direction sd and bounds check.
+     * Return the index of the most bounding variable, or -1 if none is.
+     */
+    private static int ratio(FieldVector<BigFraction> sd,
+                             FieldVector<BigFraction> check) {
         boolean unbounded = true;
         int index = -1;
         
         /* Check for unboundedness and find first non-zero element in check */
         for (int i = 0; i < sd.getDimension(); i++) {
-            if (!check.getEntry(i).equals(BigFraction.ZERO) && index == -1) {
+            if (!Rationals.isZero(check.getEntry(i)) && index == -1) {
                 index = i;
             }
             if (sd.getEntry(i).compareTo(BigFraction.ZERO) > 0) {
                 unbounded = false;
             }
         }
-        if (unbounded) throw new RuntimeException("Program is unbounded");
+        if (unbounded) return -1;
         
-        BigFraction max;
+        /*
+         * The max ratio is kept as a numerator and a denominator, and ratios
+         * are compared by cross-multiplication.
+         */
+        BigFraction maxNum;
+        BigFraction maxDenom;
         if (index == -1) { // All boundaries are 0. (All values of check are 0).
-            max = BigFraction.ZERO; // Set temporary max to zero.
+            maxNum = BigFraction.ZERO; // Set temporary max to zero.
+            maxDenom = BigFraction.ONE;
         } else {
             /* Set temporarily max value as ratio of the first divisible pair. */
-            max = sd.getEntry(index).divide(check.getEntry(index));
+            maxNum = sd.getEntry(index);
+            maxDenom = check.getEntry(index);
         }
         
         for (int i = 0; i < sd.getDimension(); i++) {
             BigFraction num = sd.getEntry(i);
             BigFraction denom = check.getEntry(i);
             
-            if (!denom.equals(BigFraction.ZERO)) {
-                BigFraction val = num.divide(denom);
-                if (val.compareTo(max) > 0) {
-                    max = val;
+            if (!Rationals.isZero(denom)) {
+                if (Rationals.compareRatios(num, denom, maxNum, maxDenom) > 0) {
+                    maxNum = num;
+                    maxDenom = denom;
                     index = i;
                 }
             } else {
@@ -345,6 +817,57 @@ public class LP {
 
 
 
+    /*
+     * Return a certificate of unboundedness for the given entering variable,
+     * sd being its primal step direction B_^-1 N_ e_j.
+     */
+    private Certificate ray(int entering, FieldVector<BigFraction> sd) {
+        BigFraction[] d = new BigFraction[Ni.length];
+        Arrays.fill(d, BigFraction.ZERO);
+
+        if (Ni[entering] < Ni.length) d[Ni[entering]] = BigFraction.ONE;
+        for (int i = 0; i < Bi.length; i++) {
+            if (Bi[i] < Ni.length) d[Bi[i]] = sd.getEntry(i).negate();
+        }
+        return Certificate.unbounded(point(), d);
+    }
+
+
+
+    /*
+     * Return a certificate of infeasibility for the given row. The Farkas
+     * ray is row i of B_^-1, found by solving B_^T y = e_i.
+     */
+    private Certificate farkas(int i) {
+        return Certificate.infeasible(lu().solveTransposed(i));
+    }
+
+
+
+    /**
+     * Return a certificate of optimality for the incumbent basic solution.
+     * The dual multipliers are read off the objective function row of the
+     * dictionary. The certificate is only valid if the incumbent basic
+     * solution is optimal for the original objective function, which can be
+     * checked with {@link Certificate#verify(LP)}.
+     *
+     * @return
+     *         A certificate of optimality, or null if the program has upper
+     *         bounds.
+     */
+    public Certificate certificate() {
+        if (u != null) return null;
+        BigFraction[] y = new BigFraction[Bi.length];
+        Arrays.fill(y, BigFraction.ZERO);
+
+        for (int j = 0; j < Ni.length; j++) {
+            if (Ni[j] >= Ni.length) y[Ni[j] - Ni.length] = c_.getEntry(j);
+        }
+        return Certificate.optimal(point(), y);
+    }
+
+
+
     /**
      * Return the objective value of the incumbent dictionary.
      *
@@ -352,14 +875,7 @@ public class LP {
      *         the objective value.
      */
     public BigFraction objVal() {
-        BigFraction sum = BigFraction.ZERO;
-        for (int i = 0; i < Bi.length; i++) {
-            int j = Bi[i];
-            if (j < c.getDimension()) {
-                sum = sum.add(c.getEntry(j).multiply(b_.getEntry(i)));
-            }
-        }
-        return sum;
+        return objVal;
     }
 
 
@@ -373,12 +889,7 @@ public class LP {
      *         True if the program is optimal. False otherwise.
      */
     public boolean optimal(boolean dual) {
-        if (dual) {
-            return feasible(true)
-                    && getMinValue(b_).compareTo(BigFraction.ZERO) >= 0;
-        }
-        return feasible(false)
-                && getMinValue(c_).compareTo(BigFraction.ZERO) >= 0;
+        return primalFeasible && dualFeasible;
     }
 
 
@@ -393,13 +904,22 @@ public class LP {
     public LP phaseOneObj() {
         FieldVector<BigFraction> nc_ = new ArrayFieldVector<BigFraction>(
                 c_.getDimension(), BigFraction.ONE);
-        return new LP(B, N, b, c, B_, N_, b_, nc_, x, Bi, Ni);
+        for (int j = 0; j < Ni.length; j++) {
+            if (atUpper(Ni[j])) nc_.setEntry(j, BigFraction.MINUS_ONE);
+        }
+        return sameBasis(new LP(B, N, b, c, B_, N_, b_, nc_, x, Bi, Ni, engine,
+                                bin, u, up));
     }
 
 
 
     /**
      * Do one iteration of the simplex method.
+     * <p>
+     * If the program has upper bounds, the leaving variable becomes
+     * non-basic at its upper bound if it is at or above it, and at zero
+     * otherwise.
+     * </p>
      *
      * @param  entering
      *         Index of variable to enter the basis.
@@ -409,40 +929,63 @@ public class LP {
      *         A linear program after one iteration.
      */
     public LP pivot(int entering, int leaving) {
-        FieldMatrix<BigFraction> bin = new FieldLUDecomposition<BigFraction>(B_)
-                .getSolver().getInverse().multiply(N_);
-        
+        BigFraction ub = upper(Bi[leaving]);
+        boolean toUpper = ub != null
+                && b_.getEntry(leaving).compareTo(ub) >= 0;
+        return pivot(entering, leaving, toUpper, new int[0], 0);
+    }
+
+
+
+    /*
+     * Do one iteration of the simplex method, the leaving variable becoming
+     * non-basic at its upper bound if toUpper is set. The first count of the
+     * given non-basic variables are moved to their other bound first.
+     */
+    private LP pivot(int entering, int leaving, boolean toUpper,
+                     int[] flipped, int count) {
+        boolean[] nup = (up == null) ? null : up.clone();
+        FieldVector<BigFraction> xb = flip(flipped, count, nup);
+
         // Step 1: Check for optimality
         // Step 2: Select entering variable.
         // Naive method. Does not check for optimality. Assumes feasibility.
         // Entering variable is given.
 
-        // Step 3: Compute primal step direction.
-        FieldVector<BigFraction> ej = new ArrayFieldVector<BigFraction>(
-                bin.getColumnDimension(), BigFraction.ZERO);
-        ej.setEntry(entering, BigFraction.ONE);
-        FieldVector<BigFraction> psd = bin.operate(ej);
+        // Step 3: Compute primal step direction, column j of B_^-1 N_,
+        // scaled by the positive integer den.
+        FieldVector<BigFraction> psd = binNumerators(entering);
+        BigFraction den = binDenominator(entering);
         
-        // Step 4: Compute primal step length.
+        // Step 4: Compute primal step length t, and ts = t / den.
         // Step 5: Select leaving variable.
-        // Leaving variable is given.
-        BigFraction t = b_.getEntry(leaving).divide(psd.getEntry(leaving));
-
-        // Step 6: Compute dual step direction.
-        FieldVector<BigFraction> ei = new ArrayFieldVector<BigFraction>(
-                bin.getRowDimension(), BigFraction.ZERO);
-        ei.setEntry(leaving, BigFraction.ONE);
-        FieldVector<BigFraction> dsd = bin.transpose()
-                .scalarMultiply(BigFraction.MINUS_ONE).operate(ei);
+        // Leaving variable is given, and so is the bound it moves to.
+        BigFraction xr = xb.getEntry(leaving);
+        if (toUpper) xr = Rationals.subtract(xr, u[Bi[leaving]]);
+        BigFraction ts = Rationals.divide(xr, psd.getEntry(leaving));
+        BigFraction t = Rationals.multiply(ts, den);
+
+        // Step 6: Compute dual step direction, row i of -(B_^-1 N_).
+        FieldVector<BigFraction> dsd = Rationals.negate(binRow(leaving));
         
         // Step 7: Compute dual step length.
-        BigFraction s = c_.getEntry(entering).divide(dsd.getEntry(entering));
+        BigFraction s = Rationals.divide(c_.getEntry(entering),
+                                         dsd.getEntry(entering));
 
         // Step 8: Update current primal and dual solutions.
-        FieldVector<BigFraction> nb_ = b_.subtract(psd.mapMultiply(t));
+        FieldVector<BigFraction> nb_ = Rationals.zero(b_.getDimension());
+        for (int i = 0; i < nb_.getDimension(); i++) {
+            nb_.setEntry(i, Rationals.subtractProduct(xb.getEntry(i),
+                                                      psd.getEntry(i), ts));
+        }
+        if (atUpper(Ni[entering])) t = Rationals.add(u[Ni[entering]], t);
         nb_.setEntry(leaving,  t);
         
-        FieldVector<BigFraction> nc_ = c_.subtract(dsd.mapMultiply(s));
+        FieldVector<BigFraction> nc_ = Rationals.zero(c_.getDimension());
+        for (int j = 0; j < nc_.getDimension(); j++) {
+            nc_.setEntry(j, Rationals.subtractProduct(c_.getEntry(j),
+                                                      dsd.getEntry(j), s));
+        }
         nc_.setEntry(entering, s);
         
         // Step 9: Update basis.
@@ -457,8 +1000,31 @@ public class LP {
         int[] nNi = Ni.clone();
         nBi[leaving] = Ni[entering];
         nNi[entering] = Bi[leaving];
+        if (nup != null) {
+            nup[Ni[entering]] = false;
+            nup[Bi[leaving]] = toUpper;
+        }
         
-        return new LP(B, N, b, c, nB_, nN_, nb_, nc_, x, nBi, nNi);
+        FieldMatrix<BigFraction> nbin = null;
+        if (engine == Engine.DICTIONARY) {
+            nbin = update(bin(), leaving, entering);
+        }
+
+        LP lp = new LP(B, N, b, c, nB_, nN_, nb_, nc_, x, nBi, nNi, engine,
+                       nbin, u, nup);
+        lp.flips = count;
+
+        /* Carry the decomposition over, until it has too many etas. */
+        if (lu != null && lu.etas() < SparseLU.REFACTOR) {
+            BigFraction[] d = psd.toArray();
+            if (!den.equals(BigFraction.ONE)) {
+                for (int i = 0; i < d.length; i++) {
+                    d[i] = Rationals.divide(d[i], den);
+                }
+            }
+            lp.lu = lu.update(leaving, d);
+        }
+        return lp;
     }
     
     
@@ -473,6 +1039,7 @@ public class LP {
      *         A linear program after one iteration.
      */
     public LP pivot(boolean dual, int entering) {
+        if (u != null) return dual ? dualStep(entering) : primalStep(entering);
         int leaving = leaving(entering, dual);
         if (dual) return pivot(leaving, entering);
         return pivot(entering, leaving);
@@ -482,6 +1049,15 @@ public class LP {
 
     /**
      * Do one iteration of the simplex method.
+     * <p>
+     * If the program has upper bounds, the dual simplex method uses a
+     * bound-flipping ratio test: while the leaving variable stays out of its
+     * bounds, every entering candidate with an upper bound that it passes is
+     * moved to its other bound instead, so that one iteration can pass many
+     * breakpoints. {@link #getFlips()} of the result tells how many. The
+     * primal simplex method moves the entering variable to its other bound
+     * without a pivot if that bound is reached first.
+     * </p>
      *
      * @param  dual
      *         If true, run the dual simplex method.
@@ -490,13 +1066,167 @@ public class LP {
      *         A linear program after one iteration.
      */
     public LP pivot(boolean dual) {
-        int e = entering(dual);
+        return pivot(dual, Rule.LARGEST_COEFFICIENT);
+    }
+
+
+
+    /**
+     * Do one iteration of the simplex method, choosing the entering variable
+     * by the given rule. See {@link #pivot(boolean)}.
+     *
+     * @param  dual
+     *         If true, run the dual simplex method.
+     *         Otherwise, run the primal simplex method.
+     * @param  rule
+     *         The pivot rule.
+     * @return
+     *         A linear program after one iteration.
+     */
+    public LP pivot(boolean dual, Rule rule) {
+        int e = entering(dual, rule);
+        if (u != null) return dual ? dualStep(e) : primalStep(e);
         int l = leaving(e, dual);
         if (dual) return pivot(l, e);
         return pivot(e, l);
     }
 
 
+
+    /*
+     * One iteration of the dual simplex method with a bound-flipping ratio
+     * test, basic variable r leaving the basis for the bound it violates.
+     */
+    private LP dualStep(int r) {
+        BigFraction ub = upper(Bi[r]);
+        boolean toUpper = ub != null && b_.getEntry(r).compareTo(ub) > 0;
+
+        /*
+         * Moving non-basic variable j by one in its feasible direction moves
+         * x_r towards its bound by alpha_j. The reduced cost of j changes
+         * sign at the breakpoint c_j / alpha_j of the dual step.
+         */
+        FieldVector<BigFraction> row = binRow(r);
+        final BigFraction[] alpha = new BigFraction[Ni.length];
+        final BigFraction[] ratio = new BigFraction[Ni.length];
+        Integer[] cand = new Integer[Ni.length];
+        int nc = 0;
+        for (int j = 0; j < Ni.length; j++) {
+            BigFraction a = row.getEntry(j);
+            alpha[j] = toUpper ? a : Rationals.negate(a);
+            int sign = alpha[j].compareTo(BigFraction.ZERO);
+            if (atUpper(Ni[j]) ? sign < 0 : sign > 0) {
+                ratio[j] = Rationals.divide(c_.getEntry(j), alpha[j]);
+                cand[nc++] = j;
+            }
+        }
+        if (nc == 0) throw new UnboundedException("Program is unbounded", null);
+
+        Arrays.sort(cand, 0, nc, new Comparator<Integer>() {
+            public int compare(Integer i, Integer j) {
+                int cmp = ratio[i].compareTo(ratio[j]);
+                return (cmp != 0) ? cmp : i.compareTo(j);
+            }
+        });
+
+        /*
+         * Pass breakpoints while the leaving variable stays out of its
+         * bounds after the candidate is moved to its other bound.
+         */
+        BigFraction slope = infeasibility(r);
+        int[] flipped = new int[nc];
+        int count = 0;
+        for (int q = 0; q < nc; q++) {
+            int j = cand[q];
+            BigFraction bound = upper(Ni[j]);
+            if (bound != null) {
+                BigFraction next = Rationals.subtractProduct(slope,
+                        alpha[j].abs(), bound);
+                if (next.compareTo(BigFraction.ZERO) > 0) {
+                    flipped[count++] = j;
+                    slope = next;
+                    continue;
+                }
+            }
+            return pivot(j, r, toUpper, flipped, count);
+        }
+        throw new UnboundedException("Program is unbounded", null);
+    }
+
+
+
+    /*
+     * One iteration of the primal simplex method on a program with upper
+     * bounds, non-basic variable s entering the basis, or moving to its
+     * other bound if that comes first.
+     */
+    private LP primalStep(int s) {
+        boolean down = atUpper(Ni[s]);
+        FieldVector<BigFraction> col = binColumn(s);
+
+        int r = -1;
+        boolean toUpper = false;
+        BigFraction min = null;
+        for (int i = 0; i < Bi.length; i++) {
+            /* Rate at which x_i decreases as x_s moves. */
+            BigFraction g = down ? Rationals.negate(col.getEntry(i))
+                                 : col.getEntry(i);
+            BigFraction ub = upper(Bi[i]);
+            BigFraction val;
+            boolean hitsUpper = g.compareTo(BigFraction.ZERO) < 0;
+            if (!hitsUpper && !Rationals.isZero(g)) {
+                val = Rationals.divide(b_.getEntry(i), g);
+            } else if (hitsUpper && ub != null) {
+                val = Rationals.divide(Rationals.subtract(ub, b_.getEntry(i)),
+                                       Rationals.negate(g));
+            } else {
+                continue;
+            }
+            if (min == null || val.compareTo(min) < 0) {
+                min = val;
+                r = i;
+                toUpper = hitsUpper;
+            }
+        }
+
+        BigFraction us = upper(Ni[s]);
+        if (us != null && (min == null || us.compareTo(min) < 0)) {
+            boolean[] nup = up.clone();
+            FieldVector<BigFraction> nb_ = flip(new int[] {s}, 1, nup);
+            LP lp = sameBasis(new LP(B, N, b, c, B_, N_, nb_, c_, x, Bi, Ni,
+                                     engine, bin, u, nup));
+            lp.flips = 1;
+            return lp;
+        }
+        if (r == -1) throw new UnboundedException("Program is unbounded", null);
+        return pivot(s, r, toUpper, new int[0], 0);
+    }
+
+
+
+    /*
+     * Return x_b after moving the first count of the given non-basic
+     * variables to their other bound, and mark them so in nup.
+     */
+    private FieldVector<BigFraction> flip(int[] js, int count, boolean[] nup) {
+        if (count == 0) return b_;
+        BigFraction[] d = new BigFraction[Ni.length];
+        Arrays.fill(d, BigFraction.ZERO);
+        for (int q = 0; q < count; q++) {
+            int k = Ni[js[q]];
+            d[js[q]] = nup[k] ? Rationals.negate(u[k]) : u[k];
+            nup[k] = !nup[k];
+        }
+        BigFraction[] ad = binTimes(d);
+        FieldVector<BigFraction> xb = Rationals.zero(Bi.length);
+        for (int i = 0; i < Bi.length; i++) {
+            xb.setEntry(i, Rationals.subtract(b_.getEntry(i), ad[i]));
+        }
+        return xb;
+    }
+
+
+
     /**
      * Transition from phase 1 to phase 2 of the simplex method by reinstating
      * an updated objective function based on the original objective function
@@ -506,30 +1236,356 @@ public class LP {
      *         A linear program.
      */
     public LP reinstate() {
-        FieldVector<BigFraction> nc_ = new ArrayFieldVector<BigFraction>(
-                c_.getDimension(), BigFraction.ZERO);
-        FieldMatrix<BigFraction> bin = new FieldLUDecomposition<BigFraction>(B_)
-                .getSolver().getInverse().multiply(N_);
+        FieldVector<BigFraction> nc_ = Rationals.zero(c_.getDimension());
+        FieldMatrix<BigFraction> bin = bin();
         
-        for (int i = 0; i < Bi.length; i++) {
-            int k = Bi[i];
-            if (k < Ni.length) {
-                for (int j = 0; j < Ni.length; j++) {
-                    BigFraction bf = c.getEntry(k).multiply(
-                            bin.getEntry(i, j));
-                    nc_.setEntry(j, nc_.getEntry(j).add(bf));
-                }
+        for (int j = 0; j < Ni.length; j++) {
+            RationalSum sum = new RationalSum();
+            for (int i = 0; i < Bi.length; i++) {
+                int k = Bi[i];
+                if (k < Ni.length) sum.addProduct(c.getEntry(k),
+                                                  numerator(bin, i, j));
             }
+            BigFraction v = sum.value(denominator(bin, j));
+            if (Ni[j] < Ni.length) v = Rationals.subtract(v, c.getEntry(Ni[j]));
+            nc_.setEntry(j, v);
         }
         
-        for (int i = 0; i < Ni.length; i++) {
-            int k = Ni[i];
-            if (k < Ni.length) {
-                nc_.setEntry(i, nc_.getEntry(i).subtract(c.getEntry(i)));
+        return sameBasis(new LP(B, N, b, c, B_, N_, b_, nc_, x, Bi, Ni, engine,
+                                this.bin, u, up));
+    }
+
+
+
+    /**
+     * Return a new linear program with the given basis, computing its
+     * dictionary exactly from the original program. The original objective
+     * function is used, so a program in phase one is brought to phase two.
+     * All non-basic variables are at zero.
+     *
+     * @param  nBi
+     *         Indices of the basic variables.
+     * @param  nNi
+     *         Indices of the non-basic variables.
+     * @return
+     *         A linear program.
+     * @throws org.apache.commons.math3.linear.SingularMatrixException
+     *         If the given variables do not form a basis.
+     */
+    public LP basis(int[] nBi, int[] nNi) {
+        int m = Bi.length;
+        int n = Ni.length;
+
+        String e = String.format("Illegal operation: A basis must have %d basic"
+                               + " and %d non-basic variables.", m, n);
+        if (nBi.length != m || nNi.length != n) {
+            throw new IllegalArgumentException(e);
+        }
+
+        FieldMatrix<BigFraction> nB_ = columns(nBi);
+        FieldMatrix<BigFraction> nN_ = columns(nNi);
+
+        /* Solve for B_^-1 N_ and B_^-1 b in one go. */
+        FieldMatrix<BigFraction> sol = Dixon.solve(nB_, LP.addBlock(nN_,
+                new Array2DRowFieldMatrix<BigFraction>(b.toArray()), RIGHT));
+
+        FieldVector<BigFraction> nb_ = sol.getColumnVector(n);
+        FieldVector<BigFraction> nc_ = Rationals.zero(n);
+        for (int j = 0; j < n; j++) {
+            RationalSum sum = new RationalSum().subtract(objCoeff(nNi[j]));
+            for (int i = 0; i < m; i++) {
+                sum.addProduct(objCoeff(nBi[i]), sol.getEntry(i, j));
             }
+            nc_.setEntry(j, sum.value());
         }
-        
-        return new LP(B, N, b, c, B_, N_, b_, nc_, x,Bi, Ni);
+
+        FieldMatrix<BigFraction> nbin = null;
+        if (engine == Engine.DICTIONARY) {
+            nbin = CompactMatrix.of(sol.getSubMatrix(0, m-1, 0, n-1));
+        }
+
+        return new LP(B, N, b, c, nB_, nN_, nb_, nc_, x, nBi.clone(),
+                      nNi.clone(), engine, nbin, u, lower());
+    }
+
+
+
+    /*
+     * Return a linear program with the given basis and the given dictionary
+     * values, which must be consistent with the basis.
+     */
+    LP snapshot(int[] nBi, int[] nNi, FieldVector<BigFraction> nb_,
+                FieldVector<BigFraction> nc_) {
+        return snapshot(nBi, nNi, nb_, nc_, lower());
+    }
+
+
+
+    /*
+     * As snapshot(), with the given non-basic variables at their upper
+     * bounds, if the program has any.
+     */
+    LP snapshot(int[] nBi, int[] nNi, FieldVector<BigFraction> nb_,
+                FieldVector<BigFraction> nc_, boolean[] nup) {
+        return new LP(B, N, b, c, columns(nBi), columns(nNi), nb_, nc_, x,
+                      nBi, nNi, engine, null, u, nup);
+    }
+
+
+
+    /* Whether lp has the same original program as this, pivots aside. */
+    boolean sameProgram(LP lp) {
+        return N == lp.N && b == lp.b && c == lp.c && u == lp.u;
+    }
+
+
+
+    /* The coefficients N of the original program. Not to be modified. */
+    FieldMatrix<BigFraction> coefficients() {
+        return N;
+    }
+
+
+
+    /* The name of variable k. */
+    String name(int k) {
+        return x.get(k);
+    }
+
+
+
+    /* z_n of the incumbent dictionary. */
+    FieldVector<BigFraction> reducedCosts() {
+        return c_;
+    }
+
+
+
+    /**
+     * Return the dual of the original program as a linear program of its
+     * own:
+     * <pre><blockquote>
+     * maximize -b y subject to -N^T y <= -c, y >= 0
+     * </blockquote></pre>
+     * Its variables are called y1..ym and its slack variables z1..zn, as in
+     * {@link #getDualBasic()}. Its optimal objective value is the negated
+     * optimal objective value of this program. The dual has the same engine
+     * as this program, and every variable non-basic at zero.
+     *
+     * @return
+     *         A linear program.
+     * @throws IllegalArgumentException
+     *         If the program has upper bounds on its variables.
+     */
+    public LP dual() {
+        if (u != null) {
+            throw new IllegalArgumentException("Illegal operation: The dual"
+                    + " of a program with upper bounds has no explicit form.");
+        }
+        int m = B.getRowDimension();
+        int n = N.getColumnDimension();
+
+        BigFraction[][] Nd = new BigFraction[n][m];
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                Nd[j][i] = Rationals.negate(N.getEntry(i, j));
+            }
+        }
+        HashMap<Integer, String> names = new HashMap<Integer, String>();
+        for (int i = 0; i < m; i++) names.put(i, "y" + (i+1));
+
+        LP dual = new LP(new Array2DRowFieldMatrix<BigFraction>(Nd, false),
+                         Rationals.negate(c), Rationals.negate(b), names);
+        for (int j = 0; j < n; j++) names.put(m + j, "z" + (j+1));
+        return dual.engine(engine);
+    }
+
+
+
+    /**
+     * Return this linear program with the basis complementary to the
+     * incumbent basis of its dual, as returned by {@link #dual()}. A
+     * variable of this program is basic if and only if the matching dual
+     * variable is non-basic: x_j matches z_j and w_i matches y_i.
+     * <p>
+     * The dictionary of the complementary basis is the negative transpose
+     * of the dual dictionary, so its values are read off the dual without
+     * solving for them: x_b are the reduced costs of the dual, and z_n are
+     * the values of the basic dual variables.
+     * </p>
+     *
+     * @param  dual
+     *         The dual of this program, with any basis.
+     * @return
+     *         A linear program.
+     * @throws IllegalArgumentException
+     *         If the given program is not shaped as the dual of this one.
+     */
+    public LP fromDual(LP dual) {
+        int m = Bi.length;
+        int n = Ni.length;
+        if (dual.Bi.length != n || dual.Ni.length != m) {
+            String e = String.format("Illegal operation: The dual must have"
+                    + " %d basic and %d non-basic variables.", n, m);
+            throw new IllegalArgumentException(e);
+        }
+
+        int[] nBi = new int[m];
+        int[] nNi = new int[n];
+        for (int i = 0; i < m; i++) nBi[i] = complement(dual.Ni[i], m, n);
+        for (int j = 0; j < n; j++) nNi[j] = complement(dual.Bi[j], m, n);
+        return snapshot(nBi, nNi, dual.c_.copy(), dual.b_.copy());
+    }
+
+
+
+    /* The variable of this program matching variable k of its dual. */
+    private static int complement(int k, int m, int n) {
+        return (k < m) ? n + k : k - m;
+    }
+
+
+
+    /**
+     * Return this linear program with upper bounds on its decision
+     * variables. All non-basic variables are at zero in the returned
+     * program.
+     *
+     * @param  ub
+     *         Upper bound of each decision variable, or null where there is
+     *         none.
+     * @return
+     *         A linear program.
+     * @throws IllegalArgumentException
+     *         If the number of bounds is wrong, or a bound is negative.
+     */
+    public LP bounds(BigFraction[] ub) {
+        int n = N.getColumnDimension();
+        if (ub.length != n) {
+            String e = String.format("Illegal operation: Expected %d bounds,"
+                                   + " got %d.", n, ub.length);
+            throw new IllegalArgumentException(e);
+        }
+
+        BigFraction[] nu = new BigFraction[n + Bi.length];
+        boolean any = false;
+        for (int k = 0; k < n; k++) {
+            if (ub[k] == null) continue;
+            if (ub[k].compareTo(BigFraction.ZERO) < 0) {
+                String e = String.format("Illegal operation: Negative upper"
+                                       + " bound %s on %s.", ub[k], x.get(k));
+                throw new IllegalArgumentException(e);
+            }
+            nu[k] = ub[k];
+            any = true;
+        }
+        if (!any) nu = null;
+
+        /* Bring the non-basic variables at an upper bound back to zero. */
+        FieldVector<BigFraction> nb_ = b_;
+        if (up != null) nb_ = new ArrayFieldVector<BigFraction>(
+                dictionary().getColumn(0), 1, Bi.length);
+
+        return sameBasis(new LP(B, N, b, c, B_, N_, nb_, c_, x, Bi, Ni, engine,
+                                bin, nu,
+                                (nu == null) ? null : new boolean[nu.length]));
+    }
+
+
+
+    /**
+     * @return
+     *         True if some variable has an upper bound.
+     */
+    public boolean hasBounds() {
+        return u != null;
+    }
+
+
+
+    /**
+     * @return
+     *         The number of non-basic variables moved to their other bound by
+     *         the pivot that made this program.
+     */
+    public int getFlips() {
+        return flips;
+    }
+
+
+
+    /**
+     * Return this linear program using the given engine to compute its
+     * dictionary. Every program derived from the returned program uses the
+     * same engine.
+     *
+     * @param  engine
+     *         An {@code Engine}.
+     * @return
+     *         A linear program.
+     */
+    public LP engine(Engine engine) {
+        if (engine == this.engine) return this;
+        return sameBasis(new LP(B, N, b, c, B_, N_, b_, c_, x, Bi, Ni, engine,
+                                null, u, up));
+    }
+
+
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+
+
+    /**
+     * Return a new double precision copy of the incumbent dictionary.
+     * Dictionaries with at least {@code FloatLP.OFF_HEAP} entries are stored
+     * off the heap, and those with at least {@code FloatLP.MAPPED} entries
+     * in a mapped scratch file.
+     * <p>
+     * The returned dictionary belongs to the caller, who may pivot it and
+     * should free it by {@link FloatLP#release()} when done.
+     * </p>
+     *
+     * @return
+     *         A {@code FloatLP}.
+     * @throws IllegalArgumentException
+     *         If the program has upper bounds on its variables.
+     */
+    public FloatLP floatDictionary() {
+        long size = (long) (Bi.length+1) * (Ni.length+1);
+        FloatLP.Storage storage = FloatLP.Storage.HEAP;
+        if (size >= FloatLP.MAPPED) storage = FloatLP.Storage.MAPPED;
+        else if (size >= FloatLP.OFF_HEAP) storage = FloatLP.Storage.DIRECT;
+        return new FloatLP(this, storage);
+    }
+
+
+
+    /* Matrix of the given columns of the original constraint matrix. */
+    private FieldMatrix<BigFraction> columns(int[] idx) {
+        FieldMatrix<BigFraction> M = new CompactMatrix(Bi.length, idx.length);
+        for (int j = 0; j < idx.length; j++) {
+            M.setColumnVector(j, column(idx[j]));
+        }
+        return M;
+    }
+
+
+
+    /* Column of variable k in the original constraint matrix [N | B]. */
+    private FieldVector<BigFraction> column(int k) {
+        if (k < N.getColumnDimension()) return N.getColumnVector(k);
+        return B.getColumnVector(k - N.getColumnDimension());
+    }
+
+
+
+    /* Coefficient of variable k in the original objective function. */
+    private BigFraction objCoeff(int k) {
+        if (k < c.getDimension()) return c.getEntry(k);
+        return BigFraction.ZERO;
     }
 
 
@@ -542,6 +1598,9 @@ public class LP {
             int j = Bi[i];
             if (j < Ni.length) point[j] = b_.getEntry(i);
         }
+        for (int k : Ni) {
+            if (k < Ni.length && atUpper(k)) point[k] = u[k];
+        }
         return point;
     }
 
@@ -659,8 +1718,25 @@ public class LP {
 
         data[0][0] = objVal();
 
-        FieldMatrix<BigFraction> values = new FieldLUDecomposition<BigFraction>(B_)
-                .getSolver().getInverse().multiply(N_);
+        /*
+         * The constants of the dictionary are the values of the basic
+         * variables and the objective when all non-basic variables are zero.
+         */
+        if (up != null) {
+            BigFraction[] v = new BigFraction[Ni.length];
+            RationalSum obj = new RationalSum().add(objVal);
+            for (int j = 0; j < Ni.length; j++) {
+                v[j] = atUpper(Ni[j]) ? u[Ni[j]] : BigFraction.ZERO;
+                obj.addProduct(c_.getEntry(j), v[j]);
+            }
+            BigFraction[] av = binTimes(v);
+            for (int i = 0; i < Bi.length; i++) {
+                data[i+1][0] = Rationals.add(data[i+1][0], av[i]);
+            }
+            data[0][0] = obj.value();
+        }
+
+        FieldMatrix<BigFraction> values = bin();
         
         for (int i = 0; i < Bi.length; i++) {
             for (int j = 0; j < Ni.length; j++) {
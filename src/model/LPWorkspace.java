@@ -0,0 +1,480 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.apache.commons.math3.linear.ArrayFieldVector;
+import org.apache.commons.math3.linear.FieldMatrix;
+import org.apache.commons.math3.linear.FieldVector;
+
+/**
+ * A mutable working copy of the dictionary of a linear program.
+ * <p>
+ * An {@code LP} is immutable, and every pivot creates a new {@code LP} so
+ * that pivots can be undone. An {@code LPWorkspace} instead keeps the
+ * dictionary B_^-1 N_ itself and updates it in place, using the same
+ * entering and leaving rules as {@code LP}. This is meant for solve loops
+ * and batch runs where no history is needed. An {@code LP} can be
+ * materialized at any time by {@link #snapshot()}.
+ * </p>
+ * <p>
+ * The dictionary is stored as one tableau in a {@code RationalArray}: row i
+ * holds row i of B_^-1 N_ followed by x_b, and row m holds z_n followed by
+ * the objective value. Small rationals are kept as pairs of {@code long}s.
+ * </p>
+ *
+ * @author  Andreas Halle
+ * @see     model.LP
+ * @see     model.Simplex
+ */
+public class LPWorkspace {
+    private final LP lp; // The program this workspace was created from.
+
+    private final int m;
+    private final int n;
+
+    private final RationalArray t; // [B_^-1 N_ | x_b] over [z_n | obj]
+
+    private final int[] Bi;
+    private final int[] Ni;
+
+
+
+    /**
+     * Initialize a workspace with the incumbent dictionary of the given
+     * linear program.
+     *
+     * @param  lp
+     *         A linear program.
+     * @throws IllegalArgumentException
+     *         If the program has upper bounds on its variables.
+     */
+    public LPWorkspace(LP lp) {
+        if (lp.hasBounds()) {
+            throw new IllegalArgumentException("Illegal operation: A workspace"
+                    + " cannot hold a program with upper bounds.");
+        }
+        FieldMatrix<BigFraction> dict = lp.dictionary();
+
+        this.lp = lp;
+        m = lp.getNoBasic();
+        n = lp.getNoNonBasic();
+        t = new RationalArray(m+1, n+1);
+
+        t.set(m, n, dict.getEntry(0, 0));
+        for (int j = 0; j < n; j++) t.set(m, j, dict.getEntry(0, j+1).negate());
+        for (int i = 0; i < m; i++) {
+            t.set(i, n, dict.getEntry(i+1, 0));
+            for (int j = 0; j < n; j++) {
+                t.set(i, j, dict.getEntry(i+1, j+1).negate());
+            }
+        }
+
+        Bi = lp.getBasicIndices().clone();
+        Ni = lp.getNonBasicIndices().clone();
+    }
+
+
+
+    /**
+     * Find an entering variable index according to the largest coefficient
+     * rule.
+     *
+     * @param  dual
+     *         If true, find an entering variable index for the dual dictionary.
+     *         Otherwise, find one for the primal dictionary.
+     * @return
+     *         An entering variable index, or -1 if there is none.
+     */
+    public int entering(boolean dual) {
+        return entering(dual, LP.Rule.LARGEST_COEFFICIENT);
+    }
+
+
+
+    /**
+     * Find an entering variable index according to the given rule.
+     *
+     * @param  dual
+     *         If true, find an entering variable index for the dual dictionary.
+     *         Otherwise, find one for the primal dictionary.
+     * @param  rule
+     *         The pivot rule.
+     * @return
+     *         An entering variable index, or -1 if there is none.
+     */
+    public int entering(boolean dual, LP.Rule rule) {
+        if (rule == LP.Rule.GREATEST_IMPROVEMENT) return greatest(dual);
+        int len = dual ? m : n;
+
+        BigFraction min = BigFraction.ZERO;
+        int index = -1;
+
+        for (int i = 0; i < len; i++) {
+            if (checkSignum(i, dual) >= 0) continue;
+            BigFraction val = check(i, dual);
+            if (val.compareTo(min) < 0) {
+                min = val;
+                index = i;
+            }
+        }
+        return index;
+    }
+
+
+
+    /*
+     * The entering variable index whose pivot improves the objective value
+     * the most, chosen as in LP. The candidates are evaluated in parallel.
+     */
+    private int greatest(final boolean dual) {
+        int len = dual ? m : n;
+        final int[] cand = new int[len];
+        int count = 0;
+        for (int i = 0; i < len; i++) {
+            if (checkSignum(i, dual) < 0) cand[count++] = i;
+        }
+
+        final BigFraction[] gain = new BigFraction[count];
+        Parallel.rows(count, dual ? n : m, new Parallel.Rows() {
+            public void run(int lo, int hi) {
+                for (int q = lo; q < hi; q++) gain[q] = gain(cand[q], dual);
+            }
+        });
+
+        int index = -1;
+        BigFraction max = null;
+        for (int q = 0; q < count; q++) {
+            if (gain[q] == null) return cand[q];
+            if (max == null || gain[q].compareTo(max) > 0) {
+                max = gain[q];
+                index = cand[q];
+            }
+        }
+        return index;
+    }
+
+
+
+    /*
+     * How much a pivot with the given entering variable index improves the
+     * objective value, or null if no variable bounds it.
+     */
+    private BigFraction gain(int entering, boolean dual) {
+        int l = ratio(entering, dual);
+        if (l == -1) return null;
+
+        BigFraction step = Rationals.divide(check(l, !dual),
+                                            sd(l, entering, dual));
+        return Rationals.negate(Rationals.multiply(check(entering, dual),
+                                                   step));
+    }
+
+
+
+    /**
+     * Find a leaving variable index that is the most bounding on the given
+     * entering variable index. Ties are broken as in {@code LP}.
+     *
+     * @param  entering
+     *         an entering variable index.
+     * @param  dual
+     *         If true, find a leaving variable index for the dual dictionary.
+     *         Otherwise, find one for the primal dictionary.
+     * @return
+     *         A leaving variable index.
+     * @throws UnboundedException
+     *         If there is no leaving variable.
+     */
+    public int leaving(int entering, boolean dual) {
+        int index = ratio(entering, dual);
+        if (index == -1) {
+            Certificate cert = dual ? farkas(entering) : ray(entering);
+            throw new UnboundedException("Program is unbounded", cert);
+        }
+        return index;
+    }
+
+
+
+    /* The ratio test of leaving(), or -1 if no variable is bounding. */
+    private int ratio(int entering, boolean dual) {
+        int len = dual ? n : m;
+
+        boolean unbounded = true;
+        int index = -1;
+
+        for (int i = 0; i < len; i++) {
+            if (checkSignum(i, !dual) != 0 && index == -1) index = i;
+            if (sdSignum(i, entering, dual) > 0) unbounded = false;
+        }
+        if (unbounded) return -1;
+
+        /* The max ratio is compared by cross-multiplication, as in LP. */
+        BigFraction maxNum = BigFraction.ZERO;
+        BigFraction maxDenom = BigFraction.ONE;
+        if (index != -1) {
+            maxNum = sd(index, entering, dual);
+            maxDenom = check(index, !dual);
+        }
+
+        for (int i = 0; i < len; i++) {
+            if (checkSignum(i, !dual) != 0) {
+                BigFraction num = sd(i, entering, dual);
+                BigFraction denom = check(i, !dual);
+                if (Rationals.compareRatios(num, denom, maxNum, maxDenom) > 0) {
+                    maxNum = num;
+                    maxDenom = denom;
+                    index = i;
+                }
+            } else {
+                if (sdSignum(i, entering, dual) > 0) return i;
+            }
+        }
+        return index;
+    }
+
+
+
+    /* Entry i of x_b (dual) or z_n (primal). */
+    private BigFraction check(int i, boolean dual) {
+        return dual ? t.get(i, n) : t.get(m, i);
+    }
+
+
+
+    private int checkSignum(int i, boolean dual) {
+        return dual ? t.signum(i, n) : t.signum(m, i);
+    }
+
+
+
+    /* Entry i of the primal or dual step direction. */
+    private BigFraction sd(int i, int entering, boolean dual) {
+        return dual ? t.get(entering, i).negate() : t.get(i, entering);
+    }
+
+
+
+    private int sdSignum(int i, int entering, boolean dual) {
+        return dual ? -t.signum(entering, i) : t.signum(i, entering);
+    }
+
+
+
+    /**
+     * Do one iteration of the simplex method in place.
+     *
+     * @param  entering
+     *         Index of variable to enter the basis.
+     * @param  leaving
+     *         Index of variable to leave the basis.
+     */
+    public void pivot(int entering, int leaving) {
+        t.pivot(leaving, entering);
+
+        int tmp = Bi[leaving];
+        Bi[leaving] = Ni[entering];
+        Ni[entering] = tmp;
+    }
+
+
+
+    /**
+     * Do one iteration of the simplex method in place, choosing entering and
+     * leaving variables according to the largest coefficient rule.
+     *
+     * @param  dual
+     *         If true, run the dual simplex method.
+     *         Otherwise, run the primal simplex method.
+     */
+    public void pivot(boolean dual) {
+        pivot(dual, LP.Rule.LARGEST_COEFFICIENT);
+    }
+
+
+
+    /**
+     * Do one iteration of the simplex method in place, choosing the entering
+     * variable by the given rule.
+     *
+     * @param  dual
+     *         If true, run the dual simplex method.
+     *         Otherwise, run the primal simplex method.
+     * @param  rule
+     *         The pivot rule.
+     */
+    public void pivot(boolean dual, LP.Rule rule) {
+        int e = entering(dual, rule);
+        if (e == -1) {
+            throw new RuntimeException("Incumbent basic solution is optimal.");
+        }
+        int l = leaving(e, dual);
+        if (dual) pivot(l, e);
+        else pivot(e, l);
+    }
+
+
+
+    /**
+     * Replace the objective function with one making the dictionary dually
+     * feasible, keeping the dictionary.
+     */
+    public void phaseOneObj() {
+        for (int j = 0; j < n; j++) t.set(m, j, BigFraction.ONE);
+    }
+
+
+
+    /**
+     * Reinstate the original objective function according to the incumbent
+     * dictionary.
+     */
+    public void reinstate() {
+        for (int j = 0; j < n; j++) {
+            RationalSum sum = new RationalSum().subtract(objCoeff(Ni[j]));
+            for (int i = 0; i < m; i++) {
+                BigFraction cb = objCoeff(Bi[i]);
+                if (t.signum(i, j) != 0) sum.addProduct(cb, t.get(i, j));
+            }
+            t.set(m, j, sum.value());
+        }
+    }
+
+
+
+    /* Coefficient of variable k in the original objective function. */
+    private BigFraction objCoeff(int k) {
+        FieldVector<BigFraction> c = lp.getObjFunction();
+        if (k < c.getDimension()) return c.getEntry(k);
+        return BigFraction.ZERO;
+    }
+
+
+
+    /**
+     * Return whether the incumbent basic solution is feasible or not.
+     *
+     * @param  dual
+     *         If true, check for dual feasibility.
+     *         Otherwise, check for primal feasibility.
+     * @return
+     *         True if the basic solution is feasible. False otherwise.
+     */
+    public boolean feasible(boolean dual) {
+        int len = dual ? n : m;
+        for (int i = 0; i < len; i++) {
+            if (checkSignum(i, !dual) < 0) return false;
+        }
+        return true;
+    }
+
+
+
+    /**
+     * @return
+     *         True if the incumbent basic solution is optimal. False
+     *         otherwise.
+     */
+    public boolean optimal() {
+        return feasible(false) && feasible(true);
+    }
+
+
+
+    /* A primal ray along the given entering column. */
+    private Certificate ray(int entering) {
+        BigFraction[] x = new BigFraction[n];
+        BigFraction[] d = new BigFraction[n];
+        for (int j = 0; j < n; j++) {
+            x[j] = BigFraction.ZERO;
+            d[j] = BigFraction.ZERO;
+        }
+
+        if (Ni[entering] < n) d[Ni[entering]] = BigFraction.ONE;
+        for (int i = 0; i < m; i++) {
+            if (Bi[i] < n) {
+                x[Bi[i]] = t.get(i, n);
+                d[Bi[i]] = t.get(i, entering).negate();
+            }
+        }
+        return Certificate.unbounded(x, d);
+    }
+
+
+
+    /*
+     * A Farkas ray for the given row, i.e. row r of B_^-1. The columns of
+     * B_^-1 are the columns of the slack variables in the dictionary.
+     */
+    private Certificate farkas(int r) {
+        BigFraction[] y = new BigFraction[m];
+        for (int j = 0; j < n; j++) {
+            if (Ni[j] >= n) y[Ni[j] - n] = t.get(r, j);
+        }
+        for (int i = 0; i < m; i++) {
+            if (Bi[i] >= n) {
+                y[Bi[i] - n] = (i == r) ? BigFraction.ONE : BigFraction.ZERO;
+            }
+        }
+        return Certificate.infeasible(y);
+    }
+
+
+
+    /**
+     * Return an immutable linear program with the incumbent dictionary.
+     *
+     * @return
+     *         A linear program.
+     */
+    public LP snapshot() {
+        FieldVector<BigFraction> nb_ = new ArrayFieldVector<BigFraction>(
+                BigFraction.ONE.getField(), m);
+        FieldVector<BigFraction> nc_ = new ArrayFieldVector<BigFraction>(
+                BigFraction.ONE.getField(), n);
+        for (int i = 0; i < m; i++) nb_.setEntry(i, t.get(i, n));
+        for (int j = 0; j < n; j++) nc_.setEntry(j, t.get(m, j));
+        return lp.snapshot(Bi.clone(), Ni.clone(), nb_, nc_);
+    }
+
+
+
+    public int getNoNonBasic() {
+        return n;
+    }
+
+
+
+    public int getNoBasic() {
+        return m;
+    }
+
+
+
+    public int[] getNonBasicIndices() {
+        return Ni;
+    }
+
+
+
+    public int[] getBasicIndices() {
+        return Bi;
+    }
+}
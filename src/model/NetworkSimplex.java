@@ -0,0 +1,522 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.apache.commons.math3.linear.ArrayFieldVector;
+import org.apache.commons.math3.linear.FieldMatrix;
+
+/**
+ * The network simplex method for linear programs on the form
+ * <pre><blockquote>
+ * maximize c x subject to N x <= b, x >= 0
+ * </blockquote></pre>
+ * where N is a node-arc incidence matrix: every column has at most one
+ * entry 1, at most one entry -1 and zeros elsewhere. Transportation,
+ * assignment and min-cost flow problems are on this form, with demands
+ * written as negated supplies.
+ * <p>
+ * Each constraint is a node, and an extra root node closes the network.
+ * A variable whose column has 1 in row i and -1 in row k is an arc from i
+ * to k, and a missing entry is replaced by the root. The slack variable of
+ * row i is an arc from i to the root. A basis of the program is then a
+ * spanning tree of the network, the basic variables are the flows on the
+ * tree arcs and the dual multipliers are the node potentials. A pivot
+ * sends flow around the cycle that the entering arc closes in the tree,
+ * which takes time proportional to the length of the cycle and the number
+ * of nodes, rather than to the size of a dictionary.
+ * </p>
+ * <p>
+ * The method starts from the tree of slack arcs. Nodes with a negative
+ * supply get an artificial arc from the root instead, whose flow a first
+ * phase drives to zero. All arithmetic is exact, with the costs scaled to
+ * integers. Entering arcs are found by block search: the arc with the most
+ * negative reduced cost among a block of about the square root of the
+ * number of arcs enters. After a long run of degenerate pivots Bland's
+ * rule takes over until the objective improves again.
+ * </p>
+ * <p>
+ * The result is a {@code LP} with the optimal basis and its dictionary,
+ * read directly off the tree, in the same form as the results of
+ * {@link Simplex}.
+ * </p>
+ *
+ * @author  Andreas Halle
+ * @see     model.LP
+ * @see     model.Simplex
+ */
+public class NetworkSimplex {
+    /* Give up after this many pivots per variable. */
+    private static final int LIMIT = 50;
+
+    /* Least number of arcs searched for one to enter. */
+    private static final int BLOCK = 32;
+
+    private final LP lp;
+    private final int m;
+    private final int n;
+    private final int root;
+
+    /*
+     * Arcs 0..n-1 are the variables, n..n+m-1 the slack arcs and
+     * n+m..n+2m-1 the artificial arcs of the first phase.
+     */
+    private final int[] tail;
+    private final int[] head;
+    private final BigFraction[] c;
+    private final BigFraction[] b;
+
+    private BigFraction[] flow;
+    private int[] basis;
+    private int[] position; // Position of each arc in the basis, or -1.
+
+    /*
+     * The costs of the current phase times unit, the least common
+     * denominator, so that costs, potentials and reduced costs are integers.
+     */
+    private BigInteger[] cost;
+    private BigInteger unit;
+
+    /* The tree, hung from the root, and the potentials times unit. */
+    private int[] parent;
+    private int[] parentArc;
+    private int[] depth;
+    private BigInteger[] y;
+
+    /* Where the search for an entering arc goes on. */
+    private int next;
+
+    private int pivots;
+
+
+
+    /**
+     * Prepare the network simplex method for the original program of the
+     * given linear program.
+     *
+     * @param  lp
+     *         A linear program.
+     * @throws IllegalArgumentException
+     *         If the program is not a network, see {@link #isNetwork(LP)}.
+     */
+    public NetworkSimplex(LP lp) {
+        if (!isNetwork(lp)) {
+            throw new IllegalArgumentException("Illegal operation: The"
+                    + " constraints are not a node-arc incidence matrix.");
+        }
+        this.lp = lp;
+        m = lp.getNoBasic();
+        n = lp.getNoNonBasic();
+        root = m;
+
+        int arcs = n + 2*m;
+        tail = new int[arcs];
+        head = new int[arcs];
+        BigFraction[][] A = lp.getConstraints().getData();
+        for (int j = 0; j < n; j++) {
+            tail[j] = root;
+            head[j] = root;
+            for (int i = 0; i < m; i++) {
+                int s = A[i][j].getNumerator().signum();
+                if (s > 0) tail[j] = i;
+                else if (s < 0) head[j] = i;
+            }
+        }
+        for (int i = 0; i < m; i++) {
+            tail[n + i] = i;
+            head[n + i] = root;
+            tail[n + m + i] = root;
+            head[n + m + i] = i;
+        }
+
+        c = lp.getObjFunction().toArray();
+        b = new BigFraction[m];
+        for (int i = 0; i < m; i++) b[i] = A[i][n];
+    }
+
+
+
+    /**
+     * Decide whether the original program of the given linear program is a
+     * network: it has no upper bounds on its variables, and every column of
+     * its constraints has at most one entry 1, at most one entry -1 and
+     * zeros elsewhere, but not only zeros.
+     *
+     * @param  lp
+     *         A linear program.
+     * @return
+     *         True if the network simplex method can solve the program.
+     */
+    public static boolean isNetwork(LP lp) {
+        if (lp.hasBounds()) return false;
+
+        FieldMatrix<BigFraction> A = lp.getConstraints();
+        int m = A.getRowDimension();
+        int n = A.getColumnDimension() - 1;
+        for (int j = 0; j < n; j++) {
+            int plus = 0;
+            int minus = 0;
+            for (int i = 0; i < m; i++) {
+                BigFraction e = A.getEntry(i, j);
+                if (Rationals.isZero(e)) continue;
+                if (Rationals.isOne(e)) plus++;
+                else if (Rationals.isOne(Rationals.negate(e))) minus++;
+                else return false;
+            }
+            if (plus > 1 || minus > 1 || plus + minus == 0) return false;
+        }
+        return true;
+    }
+
+
+
+    /**
+     * @param  lp
+     *         A linear program.
+     * @return
+     *         True if lp has the same original program as this.
+     */
+    public boolean covers(LP lp) {
+        return this.lp.sameProgram(lp);
+    }
+
+
+
+    /**
+     * Solve the program from the basis of slack variables, whatever the
+     * basis of the linear program given to the constructor.
+     *
+     * @return
+     *         The program with an optimal basis and its dictionary.
+     * @throws UnboundedException
+     *         If the program is unbounded or infeasible.
+     * @throws RuntimeException
+     *         If the iteration limit is reached.
+     */
+    public LP solve() {
+        int arcs = n + 2*m;
+        flow = new BigFraction[arcs];
+        basis = new int[m];
+        position = new int[arcs];
+        parent = new int[m + 1];
+        parentArc = new int[m + 1];
+        depth = new int[m + 1];
+        y = new BigInteger[m + 1];
+        next = 0;
+        pivots = 0;
+
+        Arrays.fill(flow, BigFraction.ZERO);
+        Arrays.fill(position, -1);
+        boolean artificial = false;
+        for (int i = 0; i < m; i++) {
+            int a = n + i;
+            if (b[i].compareTo(BigFraction.ZERO) < 0) {
+                a = n + m + i;
+                artificial = true;
+            }
+            flow[a] = b[i].abs();
+            basis[i] = a;
+            position[a] = i;
+        }
+
+        int limit = LIMIT * (m + n);
+        BigFraction[] f = new BigFraction[arcs];
+        if (artificial) {
+            Arrays.fill(f, BigFraction.ZERO);
+            for (int i = 0; i < m; i++) f[n + m + i] = BigFraction.MINUS_ONE;
+            costs(f);
+            run(limit);
+
+            for (int i = 0; i < m; i++) {
+                int a = basis[i];
+                if (a >= n + m && !Rationals.isZero(flow[a])) {
+                    BigFraction[] ray = new BigFraction[m];
+                    for (int k = 0; k < m; k++) ray[k] = fraction(y[k]);
+                    throw new UnboundedException("Program is infeasible",
+                            Certificate.infeasible(ray));
+                }
+            }
+
+            /*
+             * An artificial arc left in the tree carries no flow, and the
+             * slack arc of its node joins the same two nodes.
+             */
+            for (int i = 0; i < m; i++) {
+                int a = basis[i];
+                if (a < n + m) continue;
+                int s = a - m;
+                position[a] = -1;
+                basis[i] = s;
+                position[s] = i;
+            }
+        }
+
+        Arrays.fill(f, BigFraction.ZERO);
+        System.arraycopy(c, 0, f, 0, n);
+        costs(f);
+        run(limit);
+        return result();
+    }
+
+
+
+    /* Scale the given costs to integers. */
+    private void costs(BigFraction[] f) {
+        unit = BigInteger.ONE;
+        for (BigFraction e : f) {
+            BigInteger d = e.getDenominator();
+            unit = unit.divide(unit.gcd(d)).multiply(d);
+        }
+        cost = new BigInteger[f.length];
+        for (int a = 0; a < f.length; a++) {
+            cost[a] = f[a].getNumerator().multiply(
+                      unit.divide(f[a].getDenominator()));
+        }
+    }
+
+
+
+    /* v / unit as a fraction. */
+    private BigFraction fraction(BigInteger v) {
+        if (v.signum() == 0) return BigFraction.ZERO;
+        return Rationals.intern(new BigFraction(v, unit));
+    }
+
+
+
+    /*
+     * Pivot until no arc has a negative reduced cost with respect to the
+     * costs of the phase. Artificial arcs never enter.
+     */
+    private void run(int limit) {
+        int degenerate = 0;
+        while (true) {
+            tree();
+            boolean bland = degenerate > m;
+            int a = entering(bland);
+            if (a == -1) return;
+
+            if (pivots++ >= limit) {
+                throw new RuntimeException("Iteration limit reached. The"
+                                         + " program may be cycling.");
+            }
+            if (pivot(a)) degenerate = 0;
+            else degenerate++;
+        }
+    }
+
+
+
+    /*
+     * Hang the tree from the root and compute the potentials y, with
+     * y_t - y_h = cost on every tree arc from t to h and y_root = 0.
+     */
+    private void tree() {
+        int[] first = new int[m + 1];
+        int[] next = new int[2*m];
+        Arrays.fill(first, -1);
+        for (int k = 0; k < 2*m; k++) {
+            int a = basis[k/2];
+            int v = (k % 2 == 0) ? tail[a] : head[a];
+            next[k] = first[v];
+            first[v] = k;
+        }
+
+        int[] queue = new int[m + 1];
+        boolean[] seen = new boolean[m + 1];
+        queue[0] = root;
+        seen[root] = true;
+        parent[root] = -1;
+        parentArc[root] = -1;
+        depth[root] = 0;
+        y[root] = BigInteger.ZERO;
+        for (int qh = 0, qt = 1; qh < qt; qh++) {
+            int u = queue[qh];
+            for (int k = first[u]; k != -1; k = next[k]) {
+                int a = basis[k/2];
+                int v = (tail[a] == u) ? head[a] : tail[a];
+                if (seen[v]) continue;
+                seen[v] = true;
+                parent[v] = u;
+                parentArc[v] = a;
+                depth[v] = depth[u] + 1;
+                y[v] = (tail[a] == v) ? y[u].add(cost[a])
+                                      : y[u].subtract(cost[a]);
+                queue[qt++] = v;
+            }
+        }
+    }
+
+
+
+    /* The reduced cost y_t - y_h - cost of arc a times unit. */
+    private BigInteger reduced(int a) {
+        return y[tail[a]].subtract(y[head[a]]).subtract(cost[a]);
+    }
+
+
+
+    /*
+     * An entering arc with a negative reduced cost, or -1 if there is none.
+     * The arcs are searched in blocks, starting where the last search
+     * stopped, and the most negative in the first block that has one
+     * enters. With Bland's rule the first arc with one enters.
+     */
+    private int entering(boolean bland) {
+        int arcs = n + m;
+        if (bland) {
+            for (int a = 0; a < arcs; a++) {
+                if (position[a] == -1 && reduced(a).signum() < 0) return a;
+            }
+            return -1;
+        }
+
+        int block = Math.max(BLOCK, (int) Math.sqrt(arcs));
+        int index = -1;
+        BigInteger min = BigInteger.ZERO;
+        for (int k = 0, a = next; k < arcs; k++, a = (a + 1) % arcs) {
+            if (position[a] == -1) {
+                BigInteger d = reduced(a);
+                if (d.compareTo(min) < 0) {
+                    min = d;
+                    index = a;
+                }
+            }
+            if (index != -1 && (k + 1) % block == 0) {
+                next = (a + 1) % arcs;
+                return index;
+            }
+        }
+        return index;
+    }
+
+
+
+    /*
+     * Send flow along arc a and back through the tree until a tree arc runs
+     * empty, and let that arc leave. If several do, the one with the lowest
+     * index leaves. Return whether the flow changed.
+     */
+    private boolean pivot(int a) {
+        /* The cycle, with its arcs against the direction of a marked. */
+        int[] cycle = new int[2*m + 1];
+        boolean[] backward = new boolean[2*m + 1];
+        int len = 0;
+        cycle[len++] = a;
+
+        int u = head[a];
+        int v = tail[a];
+        while (u != v) {
+            if (depth[u] >= depth[v]) {
+                int e = parentArc[u];
+                backward[len] = tail[e] != u;
+                cycle[len++] = e;
+                u = parent[u];
+            } else {
+                int e = parentArc[v];
+                backward[len] = tail[e] == v;
+                cycle[len++] = e;
+                v = parent[v];
+            }
+        }
+
+        int leave = -1;
+        BigFraction theta = null;
+        for (int k = 1; k < len; k++) {
+            if (!backward[k]) continue;
+            int e = cycle[k];
+            int cmp = (theta == null) ? -1 : flow[e].compareTo(theta);
+            if (cmp < 0 || cmp == 0 && e < leave) {
+                theta = flow[e];
+                leave = e;
+            }
+        }
+
+        if (leave == -1) throw unbounded(cycle, len);
+
+        if (!Rationals.isZero(theta)) {
+            for (int k = 0; k < len; k++) {
+                int e = cycle[k];
+                flow[e] = backward[k] ? Rationals.subtract(flow[e], theta)
+                                      : Rationals.add(flow[e], theta);
+            }
+        }
+        flow[leave] = BigFraction.ZERO;
+
+        int p = position[leave];
+        position[leave] = -1;
+        basis[p] = a;
+        position[a] = p;
+        return !Rationals.isZero(theta);
+    }
+
+
+
+    /*
+     * The cycle has no arc against its direction, so flow can be sent
+     * around it without bound. Only the second phase gets here, as the
+     * first is bounded by zero.
+     */
+    private UnboundedException unbounded(int[] cycle, int len) {
+        BigFraction[] x = new BigFraction[n];
+        BigFraction[] d = new BigFraction[n];
+        System.arraycopy(flow, 0, x, 0, n);
+        Arrays.fill(d, BigFraction.ZERO);
+        for (int k = 0; k < len; k++) {
+            if (cycle[k] < n) d[cycle[k]] = BigFraction.ONE;
+        }
+        return new UnboundedException("Program is unbounded",
+                                      Certificate.unbounded(x, d));
+    }
+
+
+
+    /* The program with the current tree as its basis. */
+    private LP result() {
+        BigFraction[] nb_ = new BigFraction[m];
+        for (int i = 0; i < m; i++) nb_[i] = flow[basis[i]];
+
+        int[] nNi = new int[n];
+        BigFraction[] nc_ = new BigFraction[n];
+        int k = 0;
+        for (int a = 0; a < n + m; a++) {
+            if (position[a] != -1) continue;
+            nNi[k] = a;
+            nc_[k] = fraction(reduced(a));
+            k++;
+        }
+
+        return lp.snapshot(basis.clone(), nNi,
+                new ArrayFieldVector<BigFraction>(nb_, false),
+                new ArrayFieldVector<BigFraction>(nc_, false));
+    }
+
+
+
+    /**
+     * @return
+     *         The number of pivots done by the last call to {@link #solve()}.
+     */
+    public int getPivots() {
+        return pivots;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Allocation and explicit release of memory outside the Java heap, and of
+ * files mapped into memory.
+ * <p>
+ * Memory is allocated as direct {@code ByteBuffer}s. The JVM frees a direct
+ * buffer only when it is garbage collected, which may be long after it is
+ * last used since the buffer object itself is small. {@link #free} frees the
+ * memory at once where the JVM allows it, and otherwise leaves it to the
+ * garbage collector.
+ * </p>
+ *
+ * @author  Andreas Halle
+ * @see     model.FloatLP
+ */
+final class OffHeap {
+    /* Don't allow instances of this class. */
+    private OffHeap() {}
+
+    /* sun.misc.Unsafe and its invokeCleaner method, if available. */
+    private static final Object unsafe;
+    private static final Method invokeCleaner;
+    static {
+        Object u = null;
+        Method m = null;
+        try {
+            Class<?> c = Class.forName("sun.misc.Unsafe");
+            Field f = c.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            u = f.get(null);
+            m = c.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (Exception e) {
+            /* Not available. Leave it to the garbage collector. */
+            u = null;
+            m = null;
+        }
+        unsafe = u;
+        invokeCleaner = m;
+    }
+
+
+
+    /**
+     * Allocate room for the given number of doubles outside the heap.
+     *
+     * @param  size
+     *         Number of doubles.
+     * @return
+     *         A direct {@code ByteBuffer} in native byte order.
+     * @throws IllegalArgumentException
+     *         If a buffer of the given size cannot be addressed.
+     */
+    static ByteBuffer allocate(long size) {
+        if (size < 0 || size > Integer.MAX_VALUE / 8) {
+            String e = String.format("Cannot allocate %d doubles off the heap.",
+                                     size);
+            throw new IllegalArgumentException(e);
+        }
+        return ByteBuffer.allocateDirect((int) size * 8)
+                         .order(ByteOrder.nativeOrder());
+    }
+
+
+
+    /**
+     * Map a region of a file into memory.
+     *
+     * @param  ch
+     *         A channel open for reading and writing.
+     * @param  pos
+     *         Position in the file, in bytes.
+     * @param  size
+     *         Number of doubles.
+     * @return
+     *         A {@code ByteBuffer} in native byte order backed by the file.
+     * @throws IllegalArgumentException
+     *         If a buffer of the given size cannot be addressed.
+     * @throws IOException
+     *         If the file cannot be mapped.
+     */
+    static ByteBuffer map(FileChannel ch, long pos, long size)
+            throws IOException {
+        if (size < 0 || size > Integer.MAX_VALUE / 8) {
+            String e = String.format("Cannot map %d doubles.", size);
+            throw new IllegalArgumentException(e);
+        }
+        return ch.map(FileChannel.MapMode.READ_WRITE, pos, size * 8)
+                 .order(ByteOrder.nativeOrder());
+    }
+
+
+
+    /**
+     * Free the memory of a buffer returned by {@link #allocate}, or unmap one
+     * returned by {@link #map}. The buffer and all views of it must not be
+     * used afterwards.
+     *
+     * @param buf
+     *        A direct {@code ByteBuffer}.
+     */
+    static void free(ByteBuffer buf) {
+        if (invokeCleaner == null) return;
+        try {
+            invokeCleaner.invoke(unsafe, buf);
+        } catch (Exception e) {
+            /* Leave it to the garbage collector. */
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The thread pool shared by all parallel work in pplex, and a helper for
+ * splitting row updates of a matrix into blocks.
+ * <p>
+ * The number of threads defaults to the number of available processors and
+ * can be set by the system property {@code pplex.parallelism} or by
+ * {@link #setParallelism(int)}. Matrices with fewer than
+ * {@link #getThreshold()} entries are updated sequentially, as the overhead
+ * of splitting is larger than the gain.
+ * </p>
+ *
+ * @author  Andreas Halle
+ */
+public final class Parallel {
+    /* Don't allow instances of this class. */
+    private Parallel() {}
+
+    /* Number of blocks per thread, to even out blocks of uneven cost. */
+    private static final int SPLIT = 4;
+
+    private static volatile ForkJoinPool pool = new ForkJoinPool(
+            Integer.getInteger("pplex.parallelism",
+                    Runtime.getRuntime().availableProcessors()));
+
+    private static volatile int threshold = Integer.getInteger(
+            "pplex.parallel.threshold", 1 << 14);
+
+
+
+    /**
+     * Work done on a range of rows.
+     */
+    interface Rows {
+        /**
+         * Do the work for rows lo (inclusive) to hi (exclusive).
+         */
+        void run(int lo, int hi);
+    }
+
+
+
+    /**
+     * Run the given work on rows 0 to m-1 of a matrix with n columns. The
+     * rows are split into blocks done in parallel if the matrix is large
+     * enough and more than one thread is available. The work for different
+     * rows must be independent.
+     *
+     * @param m
+     *        Number of rows.
+     * @param n
+     *        Number of columns.
+     * @param body
+     *        The work to do.
+     */
+    static void rows(int m, int n, Rows body) {
+        ForkJoinPool p = pool;
+        int threads = p.getParallelism();
+        if (threads == 1 || (long) m * n < threshold) {
+            body.run(0, m);
+            return;
+        }
+        int grain = Math.max(1, m / (threads * SPLIT));
+        p.invoke(new Block(body, 0, m, grain));
+    }
+
+
+
+    /* A block of rows, split in halves until it is no larger than grain. */
+    @SuppressWarnings("serial")
+    private static class Block extends RecursiveAction {
+        private final Rows body;
+        private final int lo;
+        private final int hi;
+        private final int grain;
+
+        Block(Rows body, int lo, int hi, int grain) {
+            this.body = body;
+            this.lo = lo;
+            this.hi = hi;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= grain) {
+                body.run(lo, hi);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new Block(body, lo, mid, grain),
+                      new Block(body, mid, hi, grain));
+        }
+    }
+
+
+
+    /**
+     * @return
+     *         The shared thread pool.
+     */
+    static ForkJoinPool pool() {
+        return pool;
+    }
+
+
+
+    /**
+     * Set the number of threads used for parallel work. Work already
+     * running finishes on the old threads.
+     *
+     * @param  parallelism
+     *         Number of threads, at least 1.
+     * @throws IllegalArgumentException
+     *         If parallelism is less than 1.
+     */
+    public static synchronized void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            String e = String.format("Illegal parallelism level: %d.",
+                                     parallelism);
+            throw new IllegalArgumentException(e);
+        }
+        ForkJoinPool old = pool;
+        pool = new ForkJoinPool(parallelism);
+        old.shutdown();
+    }
+
+
+
+    public static int getParallelism() {
+        return pool.getParallelism();
+    }
+
+
+
+    /**
+     * Set the number of matrix entries below which row updates are done
+     * sequentially.
+     *
+     * @param threshold
+     *        A number of entries.
+     */
+    public static void setThreshold(int threshold) {
+        Parallel.threshold = threshold;
+    }
+
+
+
+    public static int getThreshold() {
+        return threshold;
+    }
+}
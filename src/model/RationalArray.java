@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.apache.commons.math3.fraction.BigFraction;
+
+/**
+ * A matrix of rational numbers stored row-major in flat primitive arrays.
+ * <p>
+ * Entry (i, j) is stored at index i * cols + j as a reduced {@code long}
+ * numerator and a positive {@code long} denominator. Arithmetic is done on
+ * the {@code long}s as long as it does not overflow. An entry that does not
+ * fit is stored as a {@code BigFraction} instead, marked by a zero
+ * denominator.
+ * </p>
+ *
+ * @author  Andreas Halle
+ * @see     model.LPWorkspace
+ */
+final class RationalArray {
+    private final int rows;
+    private final int cols;
+
+    private final long[] num;
+    private final long[] den;
+    private volatile BigFraction[] big; // Entries that do not fit in a long.
+
+
+
+    RationalArray(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        num = new long[rows * cols];
+        den = new long[rows * cols];
+        Arrays.fill(den, 1);
+    }
+
+
+
+    int getRowDimension() {
+        return rows;
+    }
+
+
+
+    int getColumnDimension() {
+        return cols;
+    }
+
+
+
+    BigFraction get(int i, int j) {
+        int k = i * cols + j;
+        if (den[k] == 0) return big[k];
+        return new BigFraction(BigInteger.valueOf(num[k]),
+                               BigInteger.valueOf(den[k]));
+    }
+
+
+
+    void set(int i, int j, BigFraction bf) {
+        store(i * cols + j, bf);
+    }
+
+
+
+    int signum(int i, int j) {
+        int k = i * cols + j;
+        if (den[k] == 0) return big[k].getNumerator().signum();
+        return Long.signum(num[k]);
+    }
+
+
+
+    /**
+     * Pivot on entry (r, s) of the tableau: divide row r by the pivot
+     * element and eliminate column s from every other row. Column s then
+     * holds the column of the variable that left the basis.
+     *
+     * @param r
+     *        Row of the pivot element.
+     * @param s
+     *        Column of the pivot element.
+     */
+    void pivot(final int r, final int s) {
+        final int ro = r * cols;
+        final int ps = ro + s;
+        store(ps, get(r, s).reciprocal());
+
+        for (int j = 0; j < cols; j++) {
+            if (j != s) multiply(ro + j, ro + j, ps);
+        }
+
+        /* The rows are independent, so they are updated in parallel. */
+        Parallel.rows(rows, cols, new Parallel.Rows() {
+            public void run(int lo, int hi) {
+                for (int i = lo; i < hi; i++) {
+                    int io = i * cols;
+                    if (i == r || isZero(io + s)) continue;
+
+                    for (int j = 0; j < cols; j++) {
+                        if (j != s && !isZero(ro + j)) {
+                            subtractProduct(io + j, io + s, ro + j);
+                        }
+                    }
+                    multiply(io + s, io + s, ps);
+                    negate(io + s);
+                }
+            }
+        });
+    }
+
+
+
+    private boolean isZero(int k) {
+        if (den[k] == 0) return big[k].getNumerator().signum() == 0;
+        return num[k] == 0;
+    }
+
+
+
+    /* Entry k = entry k1 * entry k2. */
+    private void multiply(int k, int k1, int k2) {
+        if (den[k1] != 0 && den[k2] != 0) {
+            try {
+                long g1 = gcd(num[k1], den[k2]);
+                long g2 = gcd(num[k2], den[k1]);
+                long n = Math.multiplyExact(num[k1] / g1, num[k2] / g2);
+                long d = Math.multiplyExact(den[k1] / g2, den[k2] / g1);
+                if (put(k, n, d)) return;
+            } catch (ArithmeticException e) {
+                /* Overflow. Fall back to BigFraction. */
+            }
+        }
+        store(k, value(k1).multiply(value(k2)));
+    }
+
+
+
+    /* Entry k = entry k - entry kf * entry kr. */
+    private void subtractProduct(int k, int kf, int kr) {
+        if (den[k] != 0 && den[kf] != 0 && den[kr] != 0) {
+            try {
+                long g1 = gcd(num[kf], den[kr]);
+                long g2 = gcd(num[kr], den[kf]);
+                long pn = Math.multiplyExact(num[kf] / g1, num[kr] / g2);
+                long pd = Math.multiplyExact(den[kf] / g2, den[kr] / g1);
+
+                /* Knuth's algorithm for adding fractions with few gcds. */
+                long g = gcd(den[k], pd);
+                long t = Math.subtractExact(
+                        Math.multiplyExact(num[k], pd / g),
+                        Math.multiplyExact(pn, den[k] / g));
+                long g3 = gcd(t, g);
+                long n = t / g3;
+                long d = Math.multiplyExact(den[k] / g, pd / g3);
+                if (put(k, n, d)) return;
+            } catch (ArithmeticException e) {
+                /* Overflow. Fall back to BigFraction. */
+            }
+        }
+        store(k, value(k).subtract(value(kf).multiply(value(kr))));
+    }
+
+
+
+    private void negate(int k) {
+        if (den[k] == 0) big[k] = big[k].negate();
+        else num[k] = -num[k];
+    }
+
+
+
+    private BigFraction value(int k) {
+        return get(k / cols, k % cols);
+    }
+
+
+
+    private void store(int k, BigFraction bf) {
+        BigInteger n = bf.getNumerator();
+        BigInteger d = bf.getDenominator();
+        if (n.bitLength() < 63 && d.bitLength() < 63) {
+            num[k] = n.longValue();
+            den[k] = d.longValue();
+            if (big != null) big[k] = null;
+        } else {
+            if (big == null) allocateBig();
+            big[k] = bf;
+            den[k] = 0;
+        }
+    }
+
+
+
+    /* Rows may be updated in parallel, so only one thread may allocate. */
+    private synchronized void allocateBig() {
+        if (big == null) big = new BigFraction[num.length];
+    }
+
+
+
+    /*
+     * Store the reduced fraction n/d at index k. Long.MIN_VALUE has no
+     * negation, so it is never stored. Return false if nothing was stored.
+     */
+    private boolean put(int k, long n, long d) {
+        if (n == Long.MIN_VALUE || d == Long.MIN_VALUE) return false;
+        if (den[k] == 0) big[k] = null;
+        num[k] = n;
+        den[k] = (n == 0) ? 1 : d;
+        return true;
+    }
+
+
+
+    private static long gcd(long a, long b) {
+        a = Math.abs(a);
+        b = Math.abs(b);
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a == 0 ? 1 : a;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.math.BigInteger;
+
+import org.apache.commons.math3.fraction.BigFraction;
+
+/**
+ * A mutable sum of rational numbers.
+ * <p>
+ * {@code BigFraction} reduces every intermediate result by a gcd, which
+ * dominates the cost of long sums of products. A {@code RationalSum} keeps an
+ * unreduced numerator and a positive denominator and reduces only once, when
+ * its value is read by {@link #value()}. Terms with the same denominator as
+ * the running sum, such as integers, are added without growing it.
+ * </p>
+ *
+ * @author  Andreas Halle
+ * @see     model.LP
+ */
+final class RationalSum {
+    private BigInteger num = BigInteger.ZERO;
+    private BigInteger den = BigInteger.ONE;
+
+
+
+    /**
+     * Add a * b to the sum.
+     *
+     * @return
+     *         This sum.
+     */
+    RationalSum addProduct(BigFraction a, BigFraction b) {
+        BigInteger an = a.getNumerator();
+        BigInteger bn = b.getNumerator();
+        if (an.signum() == 0 || bn.signum() == 0) return this;
+        return add(an.multiply(bn), a.getDenominator().multiply(
+                                    b.getDenominator()));
+    }
+
+
+
+    /**
+     * Subtract a * b from the sum.
+     *
+     * @return
+     *         This sum.
+     */
+    RationalSum subtractProduct(BigFraction a, BigFraction b) {
+        BigInteger an = a.getNumerator();
+        BigInteger bn = b.getNumerator();
+        if (an.signum() == 0 || bn.signum() == 0) return this;
+        return add(an.multiply(bn).negate(), a.getDenominator().multiply(
+                                             b.getDenominator()));
+    }
+
+
+
+    /**
+     * Add a to the sum.
+     *
+     * @return
+     *         This sum.
+     */
+    RationalSum add(BigFraction a) {
+        if (a.getNumerator().signum() == 0) return this;
+        return add(a.getNumerator(), a.getDenominator());
+    }
+
+
+
+    /**
+     * Subtract a from the sum.
+     *
+     * @return
+     *         This sum.
+     */
+    RationalSum subtract(BigFraction a) {
+        if (a.getNumerator().signum() == 0) return this;
+        return add(a.getNumerator().negate(), a.getDenominator());
+    }
+
+
+
+    /* Add n/d, d > 0. */
+    private RationalSum add(BigInteger n, BigInteger d) {
+        if (d.equals(den)) {
+            num = num.add(n);
+        } else if (den.equals(BigInteger.ONE)) {
+            num = num.multiply(d).add(n);
+            den = d;
+        } else if (d.equals(BigInteger.ONE)) {
+            num = num.add(n.multiply(den));
+        } else {
+            num = num.multiply(d).add(n.multiply(den));
+            den = den.multiply(d);
+        }
+        return this;
+    }
+
+
+
+    /**
+     * Compare the sum to the given value without reducing it.
+     *
+     * @return
+     *         A negative integer, zero or a positive integer as this sum is
+     *         less than, equal to or greater than f.
+     */
+    int compareTo(BigFraction f) {
+        BigInteger lhs = num.multiply(f.getDenominator());
+        BigInteger rhs = f.getNumerator().multiply(den);
+        return lhs.compareTo(rhs);
+    }
+
+
+
+    /**
+     * @return
+     *         The value of the sum as a reduced {@code BigFraction}.
+     */
+    BigFraction value() {
+        if (num.signum() == 0) return BigFraction.ZERO;
+        return Rationals.intern(new BigFraction(num, den));
+    }
+
+
+
+
+    /**
+     * @param  d
+     *         A positive integer.
+     * @return
+     *         The value of the sum divided by d, reduced once.
+     */
+    BigFraction value(BigInteger d) {
+        if (num.signum() == 0) return BigFraction.ZERO;
+        return Rationals.intern(new BigFraction(num, den.multiply(d)));
+    }
+}
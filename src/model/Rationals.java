@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.math.BigInteger;
+
+import org.apache.commons.math3.exception.MathArithmeticException;
+import org.apache.commons.math3.exception.util.LocalizedFormats;
+import org.apache.commons.math3.fraction.BigFraction;
+import org.apache.commons.math3.linear.ArrayFieldVector;
+import org.apache.commons.math3.linear.FieldVector;
+
+/**
+ * Canonical instances of common rational numbers and arithmetic helpers
+ * that avoid creating new {@code BigFraction}s where possible.
+ * <p>
+ * Small integers are interned: {@link #valueOf(long)} and
+ * {@link #intern(BigFraction)} return the same instance for the same small
+ * integer value, with {@code BigFraction.ZERO}, {@code BigFraction.ONE} and
+ * {@code BigFraction.MINUS_ONE} being the canonical instances of 0, 1 and -1.
+ * The arithmetic helpers skip the arithmetic altogether when an operand is
+ * zero or plus or minus one, and intern their results.
+ * </p>
+ *
+ * @author  Andreas Halle
+ * @see     model.LP
+ */
+public final class Rationals {
+    /* Don't allow instances of this class. */
+    private Rationals() {}
+
+    /** Integers in [-CACHE, CACHE] have a canonical instance. */
+    public static final int CACHE = 128;
+
+    private static final BigFraction[] INTS = new BigFraction[2*CACHE + 1];
+    static {
+        for (int i = -CACHE; i <= CACHE; i++) {
+            INTS[i + CACHE] = new BigFraction(i);
+        }
+        INTS[CACHE - 1] = BigFraction.MINUS_ONE;
+        INTS[CACHE]     = BigFraction.ZERO;
+        INTS[CACHE + 1] = BigFraction.ONE;
+        INTS[CACHE + 2] = BigFraction.TWO;
+    }
+
+
+
+    /**
+     * Return a {@code BigFraction} with the given integer value. Small
+     * values are returned from a cache.
+     *
+     * @param  i
+     *         An integer.
+     * @return
+     *         A {@code BigFraction} equal to {@code i}.
+     */
+    public static BigFraction valueOf(long i) {
+        if (i >= -CACHE && i <= CACHE) return INTS[(int) i + CACHE];
+        return new BigFraction(i);
+    }
+
+
+
+    /**
+     * Return the canonical instance of the given value if it has one, or
+     * the value itself otherwise.
+     *
+     * @param  f
+     *         A {@code BigFraction}.
+     * @return
+     *         A {@code BigFraction} equal to {@code f}.
+     */
+    public static BigFraction intern(BigFraction f) {
+        BigInteger n = f.getNumerator();
+        if (n.bitLength() < 8 && f.getDenominator().equals(BigInteger.ONE)) {
+            int i = n.intValue();
+            if (i >= -CACHE && i <= CACHE) return INTS[i + CACHE];
+        }
+        return f;
+    }
+
+
+
+    public static boolean isZero(BigFraction f) {
+        return f.getNumerator().signum() == 0;
+    }
+
+
+
+    public static boolean isOne(BigFraction f) {
+        return f == BigFraction.ONE || f.getNumerator().equals(BigInteger.ONE)
+                && f.getDenominator().equals(BigInteger.ONE);
+    }
+
+
+
+    /* Whether f is -1. */
+    private static boolean isMinusOne(BigFraction f) {
+        return f == BigFraction.MINUS_ONE
+                || f.getDenominator().equals(BigInteger.ONE)
+                && f.getNumerator().equals(BigInteger.ONE.negate());
+    }
+
+
+
+    public static BigFraction negate(BigFraction a) {
+        if (isZero(a)) return BigFraction.ZERO;
+        return intern(a.negate());
+    }
+
+
+
+    public static BigFraction add(BigFraction a, BigFraction b) {
+        if (isZero(a)) return b;
+        if (isZero(b)) return a;
+        return intern(a.add(b));
+    }
+
+
+
+    public static BigFraction subtract(BigFraction a, BigFraction b) {
+        if (isZero(b)) return a;
+        if (isZero(a)) return negate(b);
+        return intern(a.subtract(b));
+    }
+
+
+
+    public static BigFraction multiply(BigFraction a, BigFraction b) {
+        if (isZero(a) || isZero(b)) return BigFraction.ZERO;
+        if (isOne(a)) return b;
+        if (isOne(b)) return a;
+        if (isMinusOne(a)) return negate(b);
+        if (isMinusOne(b)) return negate(a);
+        return intern(a.multiply(b));
+    }
+
+
+
+    /**
+     * Return a / b.
+     *
+     * @throws MathArithmeticException
+     *         If b is zero, as {@code BigFraction.divide} does.
+     */
+    public static BigFraction divide(BigFraction a, BigFraction b) {
+        if (isZero(b)) {
+            LocalizedFormats e = LocalizedFormats.ZERO_DENOMINATOR;
+            throw new MathArithmeticException(e);
+        }
+        if (isZero(a)) return BigFraction.ZERO;
+        if (isOne(b)) return a;
+        if (isMinusOne(b)) return negate(a);
+        return intern(a.divide(b));
+    }
+
+
+
+    /**
+     * Compare the ratios a / b and c / d without computing them. The
+     * comparison is done on cross products of numerators and denominators,
+     * so no gcd is computed.
+     *
+     * @param  a
+     *         Numerator of the first ratio.
+     * @param  b
+     *         Denominator of the first ratio, which must not be zero.
+     * @param  c
+     *         Numerator of the second ratio.
+     * @param  d
+     *         Denominator of the second ratio, which must not be zero.
+     * @return
+     *         A negative integer, zero or a positive integer as a / b is less
+     *         than, equal to or greater than c / d.
+     */
+    public static int compareRatios(BigFraction a, BigFraction b,
+                                    BigFraction c, BigFraction d) {
+        /* a / b = (an bd) / (ad bn), and ad, cd > 0. */
+        BigInteger n1 = a.getNumerator().multiply(b.getDenominator());
+        BigInteger d1 = a.getDenominator().multiply(b.getNumerator());
+        BigInteger n2 = c.getNumerator().multiply(d.getDenominator());
+        BigInteger d2 = c.getDenominator().multiply(d.getNumerator());
+
+        int cmp = n1.multiply(d2).compareTo(n2.multiply(d1));
+        return d1.signum() * d2.signum() * cmp;
+    }
+
+
+
+    /**
+     * Return a - f * r, the update done on every entry of a dictionary during
+     * a pivot.
+     */
+    public static BigFraction subtractProduct(BigFraction a, BigFraction f,
+                                              BigFraction r) {
+        return subtract(a, multiply(f, r));
+    }
+
+
+
+    /**
+     * Return a vector of the given dimension with all entries set to the
+     * canonical zero.
+     *
+     * @param  dim
+     *         Dimension of the vector.
+     * @return
+     *         A zero vector.
+     */
+    public static FieldVector<BigFraction> zero(int dim) {
+        return new ArrayFieldVector<BigFraction>(dim, BigFraction.ZERO);
+    }
+
+
+
+    /**
+     * Return the unit vector of the given dimension with a one in entry i.
+     *
+     * @param  dim
+     *         Dimension of the vector.
+     * @param  i
+     *         Index of the non-zero entry.
+     * @return
+     *         A unit vector.
+     */
+    public static FieldVector<BigFraction> unit(int dim, int i) {
+        FieldVector<BigFraction> e = zero(dim);
+        e.setEntry(i, BigFraction.ONE);
+        return e;
+    }
+
+
+
+    /**
+     * Return the given vector negated.
+     *
+     * @param  v
+     *         A {@code FieldVector}.
+     * @return
+     *         A new {@code FieldVector} equal to -v.
+     */
+    public static FieldVector<BigFraction> negate(FieldVector<BigFraction> v) {
+        BigFraction[] data = new BigFraction[v.getDimension()];
+        for (int i = 0; i < data.length; i++) data[i] = negate(v.getEntry(i));
+        return new ArrayFieldVector<BigFraction>(BigFraction.ONE.getField(),
+                                                 data, false);
+    }
+}
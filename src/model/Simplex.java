@@ -0,0 +1,496 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.util.Locale;
+
+import org.apache.commons.math3.linear.SingularMatrixException;
+
+/**
+ * Runs the simplex method on a linear program until it is solved.
+ * <p>
+ * Programs that are neither primally nor dually feasible are solved in two
+ * phases: the dual simplex method is run on a phase one objective function
+ * until the basic solution is primally feasible, then the original objective
+ * function is reinstated and the primal simplex method is run.
+ * </p>
+ * <p>
+ * A {@code Simplex} keeps count of the pivots done by the last solve. If the
+ * program turns out to be unbounded or infeasible, an
+ * {@code UnboundedException} carrying a certificate is thrown.
+ * </p>
+ * <p>
+ * Programs with upper bounds on their variables are pivoted exactly as
+ * {@code LP}s, which handle the bounds, with bound-flipping dual pivots.
+ * There are no certificates for them.
+ * </p>
+ * <p>
+ * Programs with many more constraints than variables are cheaper to solve
+ * through their explicit duals, whose bases are smaller (see {@link Side}).
+ * The optimal basis of the dual is mapped back to the complementary basis
+ * of the program, so the result is the same either way.
+ * </p>
+ *
+ * @author  Andreas Halle
+ * @see     model.LP
+ * @see     model.LPWorkspace
+ * @see     model.FloatLP
+ */
+public class Simplex {
+    /* Give up after this many pivots per variable. */
+    private static final int LIMIT = 50;
+
+    /*
+     * Refactor double precision dictionaries after this many pivots. Set by
+     * the system property pplex.refactor.
+     */
+    private static final int REFACTOR = Integer.getInteger("pplex.refactor",
+                                                           100);
+
+    /**
+     * The side solved by new instances. Set by the system property
+     * {@code pplex.side}, either {@code primal}, {@code dual} or
+     * {@code smaller}. Any other value means {@code primal}.
+     */
+    public static final Side SIDE = side(System.getProperty("pplex.side"));
+
+    /**
+     * Which program the simplex method is run on.
+     */
+    public static enum Side {
+        /** The program itself. */
+        PRIMAL,
+        /** The explicit dual of the program, as built by {@link LP#dual}. */
+        DUAL,
+        /**
+         * The dual if the program has more constraints than variables, as
+         * its bases are then smaller. Otherwise the program itself.
+         */
+        SMALLER;
+    }
+
+
+
+    /* The side called name, or PRIMAL if there is none by that name. */
+    private static Side side(String name) {
+        if (name == null) return Side.PRIMAL;
+        try {
+            return Side.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return Side.PRIMAL;
+        }
+    }
+
+
+
+    private int floatPivots;
+    private int exactPivots;
+    private int boundFlips;
+    private int rejectedPivots;
+
+    private FloatLP.RatioTest ratioTest = FloatLP.RATIO_TEST;
+    private LP.Rule rule = LP.Rule.LARGEST_COEFFICIENT;
+    private Side side = SIDE;
+
+
+
+    /**
+     * Solve a linear program using exact arithmetic only.
+     *
+     * @param  lp
+     *         A linear program.
+     * @return
+     *         An optimal linear program.
+     * @throws UnboundedException
+     *         If the program is unbounded or infeasible.
+     */
+    public LP solve(LP lp) {
+        reset();
+        if (dualize(lp)) return viaDual(lp, true);
+        return exact(lp);
+    }
+
+
+
+    /**
+     * Solve a linear program using double precision arithmetic, then
+     * rebuild the final basis exactly. If the exact basic solution turns out
+     * not to be optimal, it is repaired by exact pivots. The double precision
+     * dictionary is refactored every 100 pivots, or as set by the system
+     * property {@code pplex.refactor}; 0 turns refactoring off.
+     *
+     * @param  lp
+     *         A linear program.
+     * @return
+     *         An optimal linear program.
+     * @throws UnboundedException
+     *         If the program is unbounded or infeasible.
+     */
+    public LP solveFast(LP lp) {
+        reset();
+        if (dualize(lp)) return viaDual(lp, false);
+        return fast(lp);
+    }
+
+
+
+    /**
+     * Solve the blocks of a linear program concurrently on the pool of
+     * {@link Parallel}, each as by {@link #solve(LP)} or
+     * {@link #solveFast(LP)}, and merge the results. Pivot counts are summed
+     * over the blocks.
+     *
+     * @param  blocks
+     *         A linear program split into blocks.
+     * @param  fast
+     *         If true, solve the blocks as by {@code solveFast}.
+     * @return
+     *         The whole program, optimal.
+     * @throws UnboundedException
+     *         If the program is unbounded or infeasible.
+     */
+    public LP solve(final Blocks blocks, final boolean fast) {
+        reset();
+        final int k = blocks.size();
+        final LP[] solved = new LP[k];
+        final RuntimeException[] failed = new RuntimeException[k];
+        final Simplex[] runs = new Simplex[k];
+
+        LP lp = blocks.getProgram();
+        long cells = (long) lp.getNoBasic() * lp.getNoNonBasic();
+        Parallel.rows(k, (int) Math.min(Integer.MAX_VALUE, cells / k),
+                      new Parallel.Rows() {
+            public void run(int lo, int hi) {
+                for (int b = lo; b < hi; b++) {
+                    runs[b] = copy();
+                    LP block = blocks.getBlock(b);
+                    try {
+                        solved[b] = fast ? runs[b].solveFast(block)
+                                         : runs[b].solve(block);
+                    } catch (RuntimeException e) {
+                        failed[b] = e;
+                    }
+                }
+            }
+        });
+
+        for (Simplex run : runs) {
+            floatPivots += run.floatPivots;
+            exactPivots += run.exactPivots;
+            boundFlips += run.boundFlips;
+            rejectedPivots += run.rejectedPivots;
+        }
+        return blocks.merge(solved, failed);
+    }
+
+
+
+    /* A new Simplex with the settings of this one. */
+    private Simplex copy() {
+        Simplex s = new Simplex();
+        s.ratioTest = ratioTest;
+        s.rule = rule;
+        s.side = side;
+        return s;
+    }
+
+
+
+    private void reset() {
+        floatPivots = 0;
+        exactPivots = 0;
+        boundFlips = 0;
+        rejectedPivots = 0;
+    }
+
+
+
+    /* Whether to run the simplex method on the dual of lp. */
+    private boolean dualize(LP lp) {
+        if (lp.hasBounds()) return false;
+        switch (side) {
+        case DUAL:
+            return true;
+        case SMALLER:
+            return lp.getNoBasic() > lp.getNoNonBasic();
+        default:
+            return false;
+        }
+    }
+
+
+
+    /*
+     * Solve the explicit dual of lp and return lp with the complementary
+     * basis. An unbounded dual proves lp infeasible, and its ray is a Farkas
+     * ray for lp. An infeasible dual leaves lp unbounded or infeasible,
+     * which is decided on lp itself.
+     */
+    private LP viaDual(LP lp, boolean exact) {
+        LP dual;
+        try {
+            dual = exact ? exact(lp.dual()) : fast(lp.dual());
+        } catch (UnboundedException e) {
+            Certificate cert = e.getCertificate();
+            if (cert != null && cert.getType() == Certificate.Type.UNBOUNDED) {
+                throw new UnboundedException("Program is infeasible",
+                        Certificate.infeasible(cert.getRay()));
+            }
+            return exact ? exact(lp) : fast(lp);
+        }
+        return lp.fromDual(dual);
+    }
+
+
+
+    private LP fast(LP lp) {
+        if (lp.hasBounds()) return bounded(lp);
+
+        FloatLP flp = lp.floatDictionary();
+        flp.setRatioTest(ratioTest);
+        LP start = lp;
+        try {
+            solve(flp);
+        } catch (RuntimeException e) {
+            /*
+             * Unbounded, infeasible or cycling. Let the exact pivots decide
+             * from wherever the floating point pivots got.
+             */
+        }
+        rejectedPivots = flp.getRejectedPivots();
+
+        try {
+            if (floatPivots > 0) {
+                start = lp.basis(flp.getBasicIndices(),
+                                 flp.getNonBasicIndices());
+            }
+        } catch (SingularMatrixException e) {
+            /* Rounding errors led to a singular basis. Start over. */
+        } finally {
+            flp.release();
+        }
+        return exact(start);
+    }
+
+
+
+    /**
+     * @return
+     *         The number of pivots in double precision done by the last solve.
+     */
+    public int getFloatPivots() {
+        return floatPivots;
+    }
+
+
+
+    /**
+     * @return
+     *         The number of exact pivots done by the last solve.
+     */
+    public int getExactPivots() {
+        return exactPivots;
+    }
+
+
+
+    /**
+     * @return
+     *         The number of bound flips done by the last solve.
+     */
+    public int getBoundFlips() {
+        return boundFlips;
+    }
+
+
+
+    /**
+     * @return
+     *         The number of pivot elements rejected as too small by the ratio
+     *         tests of the last solve in double precision.
+     */
+    public int getRejectedPivots() {
+        return rejectedPivots;
+    }
+
+
+
+    /**
+     * Set the ratio test of the pivots in double precision.
+     *
+     * @param ratioTest
+     *        A ratio test.
+     */
+    public void setRatioTest(FloatLP.RatioTest ratioTest) {
+        this.ratioTest = ratioTest;
+    }
+
+
+
+    /**
+     * Set the rule choosing the entering variable of exact pivots. Pivots in
+     * double precision and on programs with upper bounds use their own.
+     *
+     * @param rule
+     *        A pivot rule.
+     */
+    public void setRule(LP.Rule rule) {
+        this.rule = rule;
+    }
+
+
+
+    /**
+     * Set which program the simplex method is run on. Programs with upper
+     * bounds are always solved as they are.
+     *
+     * @param side
+     *        A side.
+     */
+    public void setSide(Side side) {
+        this.side = side;
+    }
+
+
+
+    /*
+     * Pivot in place on a workspace, materializing an LP only at the end.
+     */
+    private LP exact(LP lp) {
+        if (lp.hasBounds()) return bounded(lp);
+        int limit = limit(lp.getNoBasic(), lp.getNoNonBasic());
+
+        if (lp.optimal(false)) return lp;
+        LPWorkspace ws = new LPWorkspace(lp);
+        if (!ws.feasible(false) && !ws.feasible(true)) {
+            ws.phaseOneObj();
+            while (!ws.feasible(false)) {
+                check(exactPivots++, limit);
+                dual(ws, rule);
+            }
+            ws.reinstate();
+        }
+
+        boolean dual = !ws.feasible(false);
+        while (!ws.optimal()) {
+            check(exactPivots++, limit);
+            if (dual) dual(ws, rule);
+            else ws.pivot(false, rule);
+        }
+        return ws.snapshot();
+    }
+
+
+
+    /*
+     * Pivot a program with upper bounds as LPs.
+     */
+    private LP bounded(LP lp) {
+        int limit = limit(lp.getNoBasic(), lp.getNoNonBasic());
+
+        if (lp.optimal(false)) return lp;
+        if (!lp.feasible(false) && !lp.feasible(true)) {
+            lp = lp.phaseOneObj();
+            while (!lp.feasible(false)) {
+                check(exactPivots++, limit);
+                lp = dual(lp);
+                boundFlips += lp.getFlips();
+            }
+            lp = lp.reinstate();
+        }
+
+        boolean dual = !lp.feasible(false);
+        while (!lp.optimal(false)) {
+            check(exactPivots++, limit);
+            lp = dual ? dual(lp) : lp.pivot(false);
+            boundFlips += lp.getFlips();
+        }
+        return lp;
+    }
+
+
+
+    private void solve(FloatLP flp) {
+        int limit = limit(flp.getNoBasic(), flp.getNoNonBasic());
+
+        if (flp.optimal()) return;
+        if (!flp.feasible(false) && !flp.feasible(true)) {
+            flp.phaseOneObj();
+            while (!flp.feasible(false)) {
+                check(floatPivots++, limit);
+                flp.pivot(true);
+                refactor(flp);
+            }
+            flp.reinstate();
+        }
+
+        boolean dual = !flp.feasible(false);
+        while (!flp.optimal()) {
+            check(floatPivots++, limit);
+            flp.pivot(dual);
+            refactor(flp);
+        }
+    }
+
+
+
+    /* Refactor every REFACTOR pivots, before rounding errors pile up. */
+    private void refactor(FloatLP flp) {
+        if (REFACTOR > 0 && floatPivots % REFACTOR == 0) flp.refactor();
+    }
+
+
+
+    /* A dual pivot. An unbounded dual means an infeasible primal. */
+    private static LP dual(LP lp) {
+        try {
+            return lp.pivot(true);
+        } catch (UnboundedException e) {
+            throw new UnboundedException("Program is infeasible",
+                                         e.getCertificate());
+        }
+    }
+
+
+
+    /* A dual pivot. An unbounded dual means an infeasible primal. */
+    private static void dual(LPWorkspace ws, LP.Rule rule) {
+        try {
+            ws.pivot(true, rule);
+        } catch (UnboundedException e) {
+            throw new UnboundedException("Program is infeasible",
+                                         e.getCertificate());
+        }
+    }
+
+
+
+    private static int limit(int m, int n) {
+        return LIMIT * (m + n);
+    }
+
+
+
+    private static void check(int pivots, int limit) {
+        if (pivots >= limit) {
+            throw new RuntimeException("Iteration limit reached. The program"
+                                     + " may be cycling.");
+        }
+    }
+}
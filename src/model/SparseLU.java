@@ -0,0 +1,520 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.apache.commons.math3.linear.FieldMatrix;
+import org.apache.commons.math3.linear.NonSquareMatrixException;
+import org.apache.commons.math3.linear.SingularMatrixException;
+
+/**
+ * Sparse exact LU decomposition of a basis matrix, with hypersparse solves.
+ * <p>
+ * The decomposition is computed column by column (Gilbert-Peierls): each
+ * column is solved against the part of L found so far, and the pivot is the
+ * entry with the shortest numerator and denominator among the rows not yet
+ * pivoted on. L and U are stored sparsely, by column and by row.
+ * </p>
+ * <p>
+ * A solve with a sparse right hand side first finds the entries that can
+ * become non-zero, by a depth-first search through the graph of L or U
+ * from the non-zeros of the right hand side. It then does the numeric work
+ * on these entries only, in topological order. The cost of a solve is thus
+ * proportional to the number of non-zeros it touches rather than to the
+ * dimension of the matrix. This is used for the single column of
+ * B_^-1 N_ needed by the primal ratio test (FTRAN) and the single row needed
+ * by the dual ratio test (BTRAN). The work arrays of the solves are kept,
+ * one set per thread, and only the entries a solve touched are cleared.
+ * </p>
+ * <p>
+ * A basis change is not factorized anew. {@link #update} returns the
+ * decomposition of the new basis as this one followed by an eta matrix
+ * (product form): if column r is replaced by a column a, and d = B^-1 a,
+ * the inverse of the new basis is E^-1 B^-1, where E is the identity with
+ * column r replaced by d. The decompositions share everything but the list
+ * of etas, so older programs keep theirs. After {@link #REFACTOR} etas the
+ * caller is expected to factorize again.
+ * </p>
+ *
+ * @author  Andreas Halle
+ * @see     model.LP
+ */
+final class SparseLU {
+    /** Number of etas after which a new factorization pays off. */
+    static final int REFACTOR = 64;
+
+    private final int m;
+
+    /*
+     * Column k of L is stored under its pivot row piv[k]: the rows and
+     * multipliers below the unit diagonal. lt holds the same by row.
+     */
+    private final int[] piv;
+    private final int[] pinv;
+    private final int[][] lAdj;
+    private final BigFraction[][] lVal;
+    private final int[][] ltAdj;
+    private final BigFraction[][] ltVal;
+
+    /* Column k of U above the diagonal, and the same by row. */
+    private final int[][] uAdj;
+    private final BigFraction[][] uVal;
+    private final int[][] utAdj;
+    private final BigFraction[][] utVal;
+    private final BigFraction[] uDiag;
+
+    /*
+     * Eta e replaced column etaRow[e] by a column with d_r = etaPiv[e] and
+     * the other non-zeros etaVal[e] in rows etaAdj[e], in that order.
+     */
+    private final int[] etaRow;
+    private final BigFraction[] etaPiv;
+    private final int[][] etaAdj;
+    private final BigFraction[][] etaVal;
+
+    private final ThreadLocal<Work> work;
+
+
+
+    /*
+     * Work arrays of the solves. Between solves, x and z hold zeros and no
+     * entry of mark is set.
+     */
+    private static final class Work {
+        final BigFraction[] x;
+        final BigFraction[] z;
+        final int[] nz;
+        final int[] post;
+        final int[] stack;
+        final int[] next;
+        final boolean[] mark;
+
+        Work(int m) {
+            x = zeros(m);
+            z = zeros(m);
+            nz = new int[m];
+            post = new int[m];
+            stack = new int[m];
+            next = new int[m];
+            mark = new boolean[m];
+        }
+    }
+
+
+
+    /**
+     * Compute the LU decomposition of the given matrix.
+     *
+     * @param  B
+     *         A square {@code FieldMatrix}.
+     * @throws NonSquareMatrixException
+     *         If {@code B} is not square.
+     * @throws SingularMatrixException
+     *         If {@code B} is singular.
+     */
+    SparseLU(FieldMatrix<BigFraction> B) {
+        if (!B.isSquare()) {
+            throw new NonSquareMatrixException(B.getRowDimension(),
+                                               B.getColumnDimension());
+        }
+        m = B.getRowDimension();
+        piv = new int[m];
+        pinv = new int[m];
+        lAdj = new int[m][];
+        lVal = new BigFraction[m][];
+        uAdj = new int[m][];
+        uVal = new BigFraction[m][];
+        uDiag = new BigFraction[m];
+        Arrays.fill(pinv, -1);
+        etaRow = new int[0];
+        etaPiv = new BigFraction[0];
+        etaAdj = new int[0][];
+        etaVal = new BigFraction[0][];
+        final int dim = m;
+        work = new ThreadLocal<Work>() {
+            @Override
+            protected Work initialValue() {
+                return new Work(dim);
+            }
+        };
+
+        Work w = work.get();
+        BigFraction[] x = w.x;
+        int[] nz = w.nz;
+        int[] post = w.post;
+
+        for (int k = 0; k < m; k++) {
+            int nnz = 0;
+            for (int i = 0; i < m; i++) {
+                BigFraction e = B.getEntry(i, k);
+                if (Rationals.isZero(e)) continue;
+                x[i] = e;
+                nz[nnz++] = i;
+            }
+            int top = solveL(x, nz, nnz, w);
+
+            /* Pick the pivot least likely to make the entries grow. */
+            int p = -1;
+            int best = Integer.MAX_VALUE;
+            int nu = 0;
+            int nl = 0;
+            for (int q = 0; q < top; q++) {
+                int i = post[q];
+                if (Rationals.isZero(x[i])) continue;
+                if (pinv[i] != -1) {
+                    nu++;
+                    continue;
+                }
+                nl++;
+                int size = x[i].getNumerator().bitLength()
+                         + x[i].getDenominator().bitLength();
+                if (size < best || (size == best && i < p)) {
+                    best = size;
+                    p = i;
+                }
+            }
+            if (p == -1) {
+                for (int q = 0; q < top; q++) x[post[q]] = BigFraction.ZERO;
+                throw new SingularMatrixException();
+            }
+
+            BigFraction d = x[p];
+            uDiag[k] = d;
+            uAdj[k] = new int[nu];
+            uVal[k] = new BigFraction[nu];
+            lAdj[p] = new int[nl - 1];
+            lVal[p] = new BigFraction[nl - 1];
+            nu = 0;
+            nl = 0;
+            for (int q = 0; q < top; q++) {
+                int i = post[q];
+                BigFraction v = x[i];
+                x[i] = BigFraction.ZERO;
+                if (Rationals.isZero(v) || i == p) continue;
+                if (pinv[i] != -1) {
+                    uAdj[k][nu] = pinv[i];
+                    uVal[k][nu++] = v;
+                } else {
+                    lAdj[p][nl] = i;
+                    lVal[p][nl++] = Rationals.divide(v, d);
+                }
+            }
+            pinv[p] = k;
+            piv[k] = p;
+        }
+
+        ltAdj = new int[m][];
+        ltVal = new BigFraction[m][];
+        transpose(lAdj, lVal, ltAdj, ltVal);
+        utAdj = new int[m][];
+        utVal = new BigFraction[m][];
+        transpose(uAdj, uVal, utAdj, utVal);
+    }
+
+
+
+    /* The decomposition lu followed by one more eta. */
+    private SparseLU(SparseLU lu, int r, BigFraction[] d) {
+        m = lu.m;
+        piv = lu.piv;
+        pinv = lu.pinv;
+        lAdj = lu.lAdj;
+        lVal = lu.lVal;
+        ltAdj = lu.ltAdj;
+        ltVal = lu.ltVal;
+        uAdj = lu.uAdj;
+        uVal = lu.uVal;
+        utAdj = lu.utAdj;
+        utVal = lu.utVal;
+        uDiag = lu.uDiag;
+        work = lu.work;
+
+        int e = lu.etaRow.length;
+        etaRow = Arrays.copyOf(lu.etaRow, e + 1);
+        etaPiv = Arrays.copyOf(lu.etaPiv, e + 1);
+        etaAdj = Arrays.copyOf(lu.etaAdj, e + 1);
+        etaVal = Arrays.copyOf(lu.etaVal, e + 1);
+
+        int nnz = 0;
+        for (int i = 0; i < m; i++) {
+            if (i != r && !Rationals.isZero(d[i])) nnz++;
+        }
+        etaRow[e] = r;
+        etaPiv[e] = d[r];
+        etaAdj[e] = new int[nnz];
+        etaVal[e] = new BigFraction[nnz];
+        nnz = 0;
+        for (int i = 0; i < m; i++) {
+            if (i == r || Rationals.isZero(d[i])) continue;
+            etaAdj[e][nnz] = i;
+            etaVal[e][nnz++] = d[i];
+        }
+    }
+
+
+
+    /**
+     * Return the decomposition of this basis with column r replaced by a
+     * column a, given d = B^-1 a. This decomposition is not changed.
+     *
+     * @param  r
+     *         Index of the column that is replaced.
+     * @param  d
+     *         The solution of B d = a. Entry r must not be zero.
+     * @return
+     *         The decomposition of the new basis.
+     */
+    SparseLU update(int r, BigFraction[] d) {
+        if (Rationals.isZero(d[r])) throw new SingularMatrixException();
+        return new SparseLU(this, r, d);
+    }
+
+
+
+    /**
+     * @return
+     *         The number of basis changes since the basis was factorized.
+     */
+    int etas() {
+        return etaRow.length;
+    }
+
+
+
+    /* Store the transpose of the sparse matrix adj/val in tAdj/tVal. */
+    private void transpose(int[][] adj, BigFraction[][] val, int[][] tAdj,
+                           BigFraction[][] tVal) {
+        int[] count = new int[m];
+        for (int[] a : adj) {
+            if (a == null) continue;
+            for (int i : a) count[i]++;
+        }
+        for (int i = 0; i < m; i++) {
+            tAdj[i] = new int[count[i]];
+            tVal[i] = new BigFraction[count[i]];
+            count[i] = 0;
+        }
+        for (int node = 0; node < m; node++) {
+            int[] a = adj[node];
+            if (a == null) continue;
+            for (int t = 0; t < a.length; t++) {
+                int i = a[t];
+                tAdj[i][count[i]] = node;
+                tVal[i][count[i]++] = val[node][t];
+            }
+        }
+    }
+
+
+
+    /**
+     * Solve B x = b.
+     *
+     * @param  b
+     *         The right hand side.
+     * @return
+     *         The solution x.
+     */
+    BigFraction[] solve(BigFraction[] b) {
+        Work w = work.get();
+        BigFraction[] x = w.x;
+        int[] nz = w.nz;
+        int[] post = w.post;
+        int nnz = 0;
+        for (int i = 0; i < m; i++) {
+            if (Rationals.isZero(b[i])) continue;
+            x[i] = b[i];
+            nz[nnz++] = i;
+        }
+        int top = solveL(x, nz, nnz, w);
+
+        /* Move to the order of the pivots, and solve with U. */
+        BigFraction[] z = zeros(m);
+        nnz = 0;
+        for (int q = 0; q < top; q++) {
+            int i = post[q];
+            if (!Rationals.isZero(x[i])) {
+                z[pinv[i]] = x[i];
+                nz[nnz++] = pinv[i];
+            }
+            x[i] = BigFraction.ZERO;
+        }
+        top = reach(uAdj, nz, nnz, w);
+        for (int q = top - 1; q >= 0; q--) {
+            int k = post[q];
+            if (Rationals.isZero(z[k])) continue;
+            z[k] = Rationals.divide(z[k], uDiag[k]);
+            scatter(z, uAdj[k], uVal[k], z[k]);
+        }
+
+        /* Then with the etas, oldest first. */
+        for (int e = 0; e < etaRow.length; e++) {
+            int r = etaRow[e];
+            if (Rationals.isZero(z[r])) continue;
+            z[r] = Rationals.divide(z[r], etaPiv[e]);
+            scatter(z, etaAdj[e], etaVal[e], z[r]);
+        }
+        return z;
+    }
+
+
+
+    /**
+     * Solve B^T y = e_r, giving row r of B^-1.
+     *
+     * @param  r
+     *         A row index.
+     * @return
+     *         The solution y.
+     */
+    BigFraction[] solveTransposed(int r) {
+        Work w = work.get();
+        BigFraction[] z = w.z;
+        int[] nz = w.nz;
+        int[] post = w.post;
+
+        /*
+         * Solve with the transposed etas, newest first. Each changes only
+         * its own entry, which is marked once it is non-zero.
+         */
+        boolean[] mark = w.mark;
+        z[r] = BigFraction.ONE;
+        nz[0] = r;
+        mark[r] = true;
+        int nnz = 1;
+        for (int e = etaRow.length - 1; e >= 0; e--) {
+            int k = etaRow[e];
+            RationalSum sum = new RationalSum().add(z[k]);
+            int[] adj = etaAdj[e];
+            for (int t = 0; t < adj.length; t++) {
+                if (!Rationals.isZero(z[adj[t]])) {
+                    sum.subtractProduct(etaVal[e][t], z[adj[t]]);
+                }
+            }
+            z[k] = Rationals.divide(sum.value(), etaPiv[e]);
+            if (!mark[k] && !Rationals.isZero(z[k])) {
+                mark[k] = true;
+                nz[nnz++] = k;
+            }
+        }
+        for (int q = 0; q < nnz; q++) mark[nz[q]] = false;
+
+        int top = reach(utAdj, nz, nnz, w);
+        for (int q = top - 1; q >= 0; q--) {
+            int k = post[q];
+            if (Rationals.isZero(z[k])) continue;
+            z[k] = Rationals.divide(z[k], uDiag[k]);
+            scatter(z, utAdj[k], utVal[k], z[k]);
+        }
+
+        /* Move back to the order of the rows, and solve with L^T. */
+        BigFraction[] y = zeros(m);
+        nnz = 0;
+        for (int q = 0; q < top; q++) {
+            int k = post[q];
+            if (!Rationals.isZero(z[k])) {
+                y[piv[k]] = z[k];
+                nz[nnz++] = piv[k];
+            }
+            z[k] = BigFraction.ZERO;
+        }
+        top = reach(ltAdj, nz, nnz, w);
+        for (int q = top - 1; q >= 0; q--) {
+            int i = post[q];
+            if (!Rationals.isZero(y[i])) scatter(y, ltAdj[i], ltVal[i], y[i]);
+        }
+        return y;
+    }
+
+
+
+    /*
+     * Solve L x = b in place for the columns of L found so far, where x
+     * holds b with its non-zeros in nz. Returns the number of entries that
+     * may be non-zero, which are left in w.post.
+     */
+    private int solveL(BigFraction[] x, int[] nz, int nnz, Work w) {
+        int top = reach(lAdj, nz, nnz, w);
+        for (int q = top - 1; q >= 0; q--) {
+            int i = w.post[q];
+            if (lAdj[i] != null && !Rationals.isZero(x[i])) {
+                scatter(x, lAdj[i], lVal[i], x[i]);
+            }
+        }
+        return top;
+    }
+
+
+
+    /* x[adj[t]] -= val[t] * f for every t. */
+    private static void scatter(BigFraction[] x, int[] adj, BigFraction[] val,
+                                BigFraction f) {
+        for (int t = 0; t < adj.length; t++) {
+            x[adj[t]] = Rationals.subtractProduct(x[adj[t]], val[t], f);
+        }
+    }
+
+
+
+    /*
+     * Find the nodes reachable from the first nnz nodes of start in the
+     * given graph, by an iterative depth-first search. The nodes are put in
+     * w.post in post-order, so that every node comes after all nodes it has
+     * an edge to. Returns the number of nodes found.
+     */
+    private static int reach(int[][] adj, int[] start, int nnz, Work w) {
+        boolean[] mark = w.mark;
+        int[] stack = w.stack;
+        int[] next = w.next;
+        int[] post = w.post;
+        int top = 0;
+
+        for (int s = 0; s < nnz; s++) {
+            if (mark[start[s]]) continue;
+            int sp = 0;
+            stack[0] = start[s];
+            next[0] = 0;
+            mark[start[s]] = true;
+            while (sp >= 0) {
+                int[] a = adj[stack[sp]];
+                if (a != null && next[sp] < a.length) {
+                    int v = a[next[sp]++];
+                    if (mark[v]) continue;
+                    mark[v] = true;
+                    stack[++sp] = v;
+                    next[sp] = 0;
+                } else {
+                    post[top++] = stack[sp--];
+                }
+            }
+        }
+        for (int q = 0; q < top; q++) mark[post[q]] = false;
+        return top;
+    }
+
+
+
+    private static BigFraction[] zeros(int m) {
+        BigFraction[] x = new BigFraction[m];
+        Arrays.fill(x, BigFraction.ZERO);
+        return x;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+/**
+ * Thrown when no leaving variable exists because the primal or the dual
+ * program is unbounded. An unbounded dual program means that the primal
+ * program is infeasible. The exception carries a {@code Certificate}
+ * proving either case, except for programs with upper bounds on their
+ * variables.
+ *
+ * @author  Andreas Halle
+ * @see     model.Certificate
+ */
+public class UnboundedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final Certificate certificate;
+
+
+
+    public UnboundedException(String message, Certificate certificate) {
+        super(message);
+        this.certificate = certificate;
+    }
+
+
+
+    /**
+     * @return
+     *         A certificate of unboundedness of the primal program or of
+     *         infeasibility of the primal program, or null if the program
+     *         has upper bounds.
+     */
+    public Certificate getCertificate() {
+        return certificate;
+    }
+}
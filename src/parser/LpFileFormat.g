@@ -8,12 +8,36 @@ grammar LpFileFormat;
     import org.apache.commons.math3.linear.ArrayFieldVector;
     import java.math.BigInteger;
     import java.util.Map.Entry;
+    import model.Blocks;
     import model.LP;
+    import model.NetworkSimplex;
     
 }
 @lexer::header { package parser; }
 
 @parser::members {
+    private Blocks blocks;
+    private NetworkSimplex network;
+
+    /**
+     * @return
+     *         The independent blocks of the program read by the last call to
+     *         lpfromfile, or null if it has not been called.
+     */
+    public Blocks getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * @return
+     *         The network simplex method for the program read by the last
+     *         call to lpfromfile, or null if it is not a network or
+     *         lpfromfile has not been called.
+     */
+    public NetworkSimplex getNetwork() {
+        return network;
+    }
+
     BigFraction evalFrac(String arg) {
         String[] args = arg.split("\\/");
         BigInteger int1 = new BigInteger(args[0]);
@@ -165,11 +189,12 @@ var returns [BigFraction coeff, String name]
 
 ////////////////////////// LP SPECIFIC STUFF //////////////////////////
 // Objective section
-lpfile returns [HashMap<String, Integer> varnames, ArrayList<ArrayList<BigFraction>> coeffs, ArrayList<BigFraction> rhs]
+lpfile returns [HashMap<String, Integer> varnames, ArrayList<ArrayList<BigFraction>> coeffs, ArrayList<BigFraction> rhs, HashMap<Integer, BigFraction> bounds]
     :   {
             $varnames = new HashMap<String, Integer>();
             $coeffs = new ArrayList<ArrayList<BigFraction>>();
             $rhs = new ArrayList<BigFraction>();
+            $bounds = new HashMap<Integer, BigFraction>();
             boolean maximize = true;
             int row = 0;
             int col = 0;
@@ -245,9 +270,9 @@ lpfile returns [HashMap<String, Integer> varnames, ArrayList<ArrayList<BigFracti
         | '=>' { sense = '>'; }
         | '=' { sense = '='; }
         )
-        term {
+        rterm=term {
             if (sense == '<') {
-                $rhs.add($term.val);
+                $rhs.add($rterm.val);
             }
             else if (sense == '=') {
                 $coeffs.add(new ArrayList<BigFraction>());
@@ -256,17 +281,31 @@ lpfile returns [HashMap<String, Integer> varnames, ArrayList<ArrayList<BigFracti
                 for (BigFraction bf : $coeffs.get(row-1)) {
                     $coeffs.get(row).add(bf.negate());
                 }
-                $rhs.add($term.val);
-                $rhs.add($term.val.negate());
+                $rhs.add($rterm.val);
+                $rhs.add($rterm.val.negate());
             }
             else if (sense == '>') {
                 for (int i = 0; i < $coeffs.get(row).size(); i++) {
                     $coeffs.get(row).set(i, $coeffs.get(row).get(i).negate());
                 }
-                $rhs.add($term.val.negate());
+                $rhs.add($rterm.val.negate());
             }
         }
         )+
+        // Bounds section. Only upper bounds are supported, the lower bound
+        // of every variable being zero.
+        (
+        BOUNDSSECTION
+        (
+        bvar=VARNAME ('<' | '<=' | '=<') bterm=term {
+            if (!$varnames.containsKey($bvar.text)) {
+                throw new IllegalArgumentException("Unknown variable in"
+                        + " bounds section: " + $bvar.text);
+            }
+            $bounds.put($varnames.get($bvar.text), $bterm.val);
+        }
+        )*
+        )?
         END?
     ;
 
@@ -298,6 +337,17 @@ lpfromfile returns [LP lp]
         $lp = new LP(new Array2DRowFieldMatrix<BigFraction>(Ndata),
                 new ArrayFieldVector<BigFraction>(bdata),
                 new ArrayFieldVector<BigFraction>(cdata), x);
+
+        if (!$lpfile.bounds.isEmpty()) {
+            BigFraction[] ub = new BigFraction[cols];
+            for (Entry<Integer, BigFraction> entry : $lpfile.bounds.entrySet()) {
+                ub[entry.getKey()] = entry.getValue();
+            }
+            $lp = $lp.bounds(ub);
+        }
+        blocks = new Blocks($lp);
+        network = NetworkSimplex.isNetwork($lp) ? new NetworkSimplex($lp)
+                                                : null;
     }
     ;
 ////////////////////////// END LP SPECIFIC STUFF //////////////////////////
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2012, 2013 Andreas Halle
+ *
+ * This file is part of pplex.
+ *
+ * pplex is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * pplex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public license
+ * along with pplex. If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The unit-stride loops of {@code FloatKernels} on the incubating vector
+ * API. This class is compiled apart from the rest of pplex, with
+ * {@code --add-modules jdk.incubator.vector}, and loaded by name by
+ * {@code FloatKernels} if the module is present.
+ * <p>
+ * Searches take a vector pass for the extreme value and another for the
+ * first index where it is found, so they return what the scalar loops
+ * return. Updates multiply and subtract without fusing, so they round as
+ * the scalar loops do.
+ * </p>
+ *
+ * @author  Andreas Halle
+ * @see     model.FloatKernels
+ */
+public final class VectorKernels implements FloatKernels.Unit {
+    private static final VectorSpecies<Double> S =
+            DoubleVector.SPECIES_PREFERRED;
+    private static final int L = S.length();
+
+
+
+    /**
+     * See {@link FloatKernels#argmin}, with a step of one. It takes a pass
+     * for the minimum and part of another to find it, which measured slower
+     * than the single scalar pass, so {@code FloatKernels} does not use it.
+     * Run {@code ant bench} to compare.
+     */
+    public int argmin(double[] a, int off, int len, double bound) {
+        int lim = S.loopBound(len);
+        DoubleVector min = DoubleVector.broadcast(S, bound);
+        int i = 0;
+        for (; i < lim; i += L) {
+            min = min.min(DoubleVector.fromArray(S, a, off + i));
+        }
+        double m = min.reduceLanes(VectorOperators.MIN);
+        for (; i < len; i++) m = Math.min(m, a[off + i]);
+        if (Double.isNaN(m)) return first(a, off, len, bound);
+        if (!(m < bound)) return -1;
+
+        i = 0;
+        for (; i < lim; i += L) {
+            VectorMask<Double> eq = DoubleVector.fromArray(S, a, off + i).eq(m);
+            if (eq.anyTrue()) return i + eq.firstTrue();
+        }
+        for (; i < len; i++) {
+            if (a[off + i] == m) return i;
+        }
+        return -1;
+    }
+
+
+
+    /* The scalar loop of argmin, which passes over NaNs. */
+    private static int first(double[] a, int off, int len, double bound) {
+        double min = bound;
+        int index = -1;
+        for (int i = 0; i < len; i++) {
+            if (a[off + i] < min) {
+                min = a[off + i];
+                index = i;
+            }
+        }
+        return index;
+    }
+
+
+
+    /** See {@link FloatKernels#ratio}, with strides of one. */
+    public int ratio(double[] a, int so, double sign, int co, int len,
+                     double eps) {
+        int lim = S.loopBound(len);
+        boolean unbounded = true;
+        boolean bounded = false;
+        DoubleVector max = DoubleVector.broadcast(S, Double.NEGATIVE_INFINITY);
+        int i = 0;
+        for (; i < lim; i += L) {
+            DoubleVector num = DoubleVector.fromArray(S, a, so + i).mul(sign);
+            DoubleVector check = DoubleVector.fromArray(S, a, co + i);
+            VectorMask<Double> pos = num.compare(VectorOperators.GT, eps);
+            VectorMask<Double> ok = check.abs()
+                                         .compare(VectorOperators.GT, eps);
+
+            VectorMask<Double> zero = pos.and(ok.not());
+            if (zero.anyTrue()) return i + zero.firstTrue();
+            if (pos.anyTrue()) unbounded = false;
+            if (ok.anyTrue()) bounded = true;
+
+            DoubleVector val = num.div(check);
+            max = max.blend(val, val.compare(VectorOperators.GT, max).and(ok));
+        }
+        double mx = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < L; k++) mx = Math.max(mx, max.lane(k));
+        for (int k = i; k < len; k++) {
+            double num = sign * a[so + k];
+            double check = a[co + k];
+            if (num > eps) unbounded = false;
+            if (Math.abs(check) > eps) {
+                bounded = true;
+                mx = Math.max(mx, num / check);
+            } else {
+                if (num > eps) return k;
+            }
+        }
+        if (unbounded) return FloatKernels.UNBOUNDED;
+        if (!bounded) return -1;
+
+        i = 0;
+        for (; i < lim; i += L) {
+            DoubleVector num = DoubleVector.fromArray(S, a, so + i).mul(sign);
+            DoubleVector check = DoubleVector.fromArray(S, a, co + i);
+            VectorMask<Double> hit = check.abs()
+                                          .compare(VectorOperators.GT, eps)
+                                          .and(num.div(check).eq(mx));
+            if (hit.anyTrue()) return i + hit.firstTrue();
+        }
+        for (; i < len; i++) {
+            double check = a[co + i];
+            if (Math.abs(check) > eps && sign * a[so + i] / check == mx) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+
+    /** See {@link FloatKernels#harris}, with strides of one. */
+    public int harris(double[] a, int so, double sign, int co, int len,
+                      double tol, double delta) {
+        int lim = S.loopBound(len);
+        DoubleVector th = DoubleVector.broadcast(S, Double.POSITIVE_INFINITY);
+        int i = 0;
+        for (; i < lim; i += L) {
+            DoubleVector num = DoubleVector.fromArray(S, a, so + i).mul(sign);
+            DoubleVector q = DoubleVector.fromArray(S, a, co + i).add(delta)
+                                         .div(num);
+            th = th.blend(th.min(q), num.compare(VectorOperators.GT, tol));
+        }
+        double theta = th.reduceLanes(VectorOperators.MIN);
+        for (; i < len; i++) {
+            double num = sign * a[so + i];
+            if (num > tol) theta = Math.min(theta, (a[co + i] + delta) / num);
+        }
+        if (theta == Double.POSITIVE_INFINITY) return FloatKernels.UNBOUNDED;
+
+        DoubleVector max = DoubleVector.zero(S);
+        i = 0;
+        for (; i < lim; i += L) {
+            DoubleVector num = DoubleVector.fromArray(S, a, so + i).mul(sign);
+            max = max.blend(num, candidates(a, co + i, num, tol, theta)
+                                 .and(num.compare(VectorOperators.GT, max)));
+        }
+        double mx = 0;
+        for (int k = 0; k < L; k++) mx = Math.max(mx, max.lane(k));
+        for (int k = i; k < len; k++) {
+            double num = sign * a[so + k];
+            if (num > tol && a[co + k] <= theta * num && num > mx) mx = num;
+        }
+        if (mx == 0) return -1;
+
+        i = 0;
+        for (; i < lim; i += L) {
+            DoubleVector num = DoubleVector.fromArray(S, a, so + i).mul(sign);
+            VectorMask<Double> hit = candidates(a, co + i, num, tol, theta)
+                                     .and(num.eq(mx));
+            if (hit.anyTrue()) return i + hit.firstTrue();
+        }
+        for (; i < len; i++) {
+            double num = sign * a[so + i];
+            if (num > tol && a[co + i] <= theta * num && num == mx) return i;
+        }
+        return -1;
+    }
+
+
+
+    /* Lanes with a direction above tol whose bound allows a step of theta. */
+    private static VectorMask<Double> candidates(double[] a, int co,
+                                                 DoubleVector num, double tol,
+                                                 double theta) {
+        DoubleVector check = DoubleVector.fromArray(S, a, co);
+        return num.compare(VectorOperators.GT, tol)
+                  .and(check.compare(VectorOperators.LE, num.mul(theta)));
+    }
+
+
+
+    /** See {@link FloatKernels#tiny}, with a stride of one. */
+    public int tiny(double[] a, int so, double sign, int len, double tol) {
+        int lim = S.loopBound(len);
+        int count = 0;
+        int i = 0;
+        for (; i < lim; i += L) {
+            DoubleVector num = DoubleVector.fromArray(S, a, so + i).mul(sign);
+            count += num.compare(VectorOperators.GT, 0.0)
+                        .and(num.compare(VectorOperators.LE, tol))
+                        .trueCount();
+        }
+        for (; i < len; i++) {
+            double num = sign * a[so + i];
+            if (num > 0 && num <= tol) count++;
+        }
+        return count;
+    }
+
+
+
+    /**
+     * See {@link FloatKernels#axpy(double, double[], int, double[], int,
+     * int)}.
+     */
+    public void axpy(double f, double[] x, int xo, double[] y, int yo,
+                     int len) {
+        int lim = S.loopBound(len);
+        int j = 0;
+        for (; j < lim; j += L) {
+            DoubleVector xv = DoubleVector.fromArray(S, x, xo + j);
+            DoubleVector yv = DoubleVector.fromArray(S, y, yo + j);
+            yv.sub(xv.mul(f)).intoArray(y, yo + j);
+        }
+        for (; j < len; j++) y[yo + j] -= f * x[xo + j];
+    }
+
+
+
+    /** See {@link FloatKernels#scale}. */
+    public void scale(double f, double[] x, int xo, int len) {
+        int lim = S.loopBound(len);
+        int j = 0;
+        for (; j < lim; j += L) {
+            DoubleVector.fromArray(S, x, xo + j).mul(f).intoArray(x, xo + j);
+        }
+        for (; j < len; j++) x[xo + j] *= f;
+    }
+}